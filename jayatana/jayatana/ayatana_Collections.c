@@ -30,84 +30,89 @@
 #include "ayatana_Collections.h"
 #include <stdlib.h>
 
-void collection_list_realloc(ListIndex *list) {
-	if (list->size == list->allocated) {
-		list->allocated *= 2;
-		list->entries = (ListIndexEntry **)realloc(list->entries, sizeof(ListIndexEntry *)*list->allocated);
-	}
-}
+#define COLLECTION_ENTRY_EMPTY 0
+#define COLLECTION_ENTRY_USED 1
+#define COLLECTION_ENTRY_DELETED 2
 
-ListIndex *collection_list_index_new() {
-	ListIndex *list = (ListIndex *)malloc(sizeof(ListIndex));
-	list->entries = (ListIndexEntry **)malloc(sizeof(ListIndexEntry *));
-	list->allocated = 1;
-	list->size = 0;
-	return list;
+/* dispersión del identificador, los identificadores de ventana X11 suelen ser consecutivos */
+unsigned long collection_hash(long id, unsigned long allocated) {
+	unsigned long long hash = (unsigned long long)id * 0x9E3779B97F4A7C15ULL;
+	return (unsigned long)(hash >> 32) & (allocated - 1);
 }
 
-void collection_list_index_add(ListIndex *list, long id, void *data) {
-	collection_list_realloc(list);
-	ListIndexEntry *entry = (ListIndexEntry *)malloc(sizeof(ListIndexEntry));
-	entry->id = id;
-	entry->data = data;
-	list->entries[list->size] = entry;
-	list->size++;
-}
-
-void *collection_list_index_get(ListIndex *list, long id) {
-	int i;
-	for (i=0;i<list->size;i++) {
-		if (list->entries[i]->id == id)
-			return list->entries[i]->data;
+/* busca la entrada del identificador o la primera entrada libre */
+HashIndexEntry *collection_hash_index_find(HashIndex *index, long id, int insert) {
+	unsigned long i = collection_hash(id, index->allocated);
+	HashIndexEntry *deleted = NULL;
+	for (;;) {
+		HashIndexEntry *entry = &index->entries[i];
+		if (entry->state == COLLECTION_ENTRY_EMPTY)
+			return insert ? (deleted != NULL ? deleted : entry) : NULL;
+		if (entry->state == COLLECTION_ENTRY_USED && entry->id == id)
+			return entry;
+		if (entry->state == COLLECTION_ENTRY_DELETED && deleted == NULL)
+			deleted = entry;
+		i = (i + 1) & (index->allocated - 1);
 	}
-	return NULL;
 }
 
-void *collection_list_index_remove(ListIndex *list, long id) {
-	int i;
-	for (i=0;i<list->size;i++) {
-		if (list->entries[i]->id == id) {
-			void *data = list->entries[i]->data;
-			free(list->entries[i]);
-			int j;
-			for (j=i+1;j<list->size;j++) {
-				list->entries[j-1] = list->entries[j];
-			}
-			list->size--;
-			return data;
-		}
+/* redimensiona la tabla eliminando las entradas borradas */
+void collection_hash_index_resize(HashIndex *index, unsigned long allocated) {
+	HashIndexEntry *entries = index->entries;
+	unsigned long oldallocated = index->allocated;
+	index->entries = (HashIndexEntry *)calloc(allocated, sizeof(HashIndexEntry));
+	index->allocated = allocated;
+	index->used = index->size;
+	unsigned long i;
+	for (i=0;i<oldallocated;i++) {
+		if (entries[i].state == COLLECTION_ENTRY_USED)
+			*collection_hash_index_find(index, entries[i].id, 1) = entries[i];
 	}
-	return NULL;
+	free(entries);
 }
 
-void collection_list_index_destory(ListIndex *list) {
-	int i;
-	for (i=0;i<list->size;i++)
-		free(list->entries[i]);
-	free(list->entries);
-	free(list);
+HashIndex *collection_hash_index_new() {
+	HashIndex *index = (HashIndex *)malloc(sizeof(HashIndex));
+	index->allocated = 16;
+	index->entries = (HashIndexEntry *)calloc(index->allocated, sizeof(HashIndexEntry));
+	index->size = 0;
+	index->used = 0;
+	return index;
 }
 
-void collection_list_index_add_last(ListIndex *list, void *data) {
-	collection_list_realloc(list);
-	ListIndexEntry *entry = (ListIndexEntry *)malloc(sizeof(ListIndexEntry));
-	entry->id = list->size;
+void collection_hash_index_put(HashIndex *index, long id, void *data) {
+	// factor de carga máximo 3/4 contando las entradas borradas
+	if ((index->used + 1) * 4 > index->allocated * 3)
+		collection_hash_index_resize(index, index->size * 2 >= index->allocated / 2 ?
+				index->allocated * 2 : index->allocated);
+	HashIndexEntry *entry = collection_hash_index_find(index, id, 1);
+	if (entry->state != COLLECTION_ENTRY_USED) {
+		if (entry->state == COLLECTION_ENTRY_EMPTY)
+			index->used++;
+		index->size++;
+		entry->state = COLLECTION_ENTRY_USED;
+		entry->id = id;
+	}
 	entry->data = data;
-	list->entries[list->size] = entry;
-	list->size++;
 }
 
-void *collection_list_index_get_last(ListIndex *list) {
-	return list->entries[list->size-1]->data;
+void *collection_hash_index_get(HashIndex *index, long id) {
+	HashIndexEntry *entry = collection_hash_index_find(index, id, 0);
+	return entry == NULL ? NULL : entry->data;
 }
 
-void *collection_list_index_remove_last(ListIndex *list) {
-	if (list->size == 0)
+void *collection_hash_index_remove(HashIndex *index, long id) {
+	HashIndexEntry *entry = collection_hash_index_find(index, id, 0);
+	if (entry == NULL)
 		return NULL;
-	void *data = collection_list_index_get_last(list);
-	free(list->entries[list->size-1]);
-	list->entries[list->size-1] = NULL;
-	list->size--;
+	void *data = entry->data;
+	entry->state = COLLECTION_ENTRY_DELETED;
+	entry->data = NULL;
+	index->size--;
 	return data;
 }
 
+void collection_hash_index_destroy(HashIndex *index) {
+	free(index->entries);
+	free(index);
+}
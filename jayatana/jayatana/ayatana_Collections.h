@@ -37,22 +37,22 @@ extern "C" {
 typedef struct {
 	long id;
 	void *data;
-} ListIndexEntry;
+	unsigned char state;
+} HashIndexEntry;
 
+/* tabla de direccionamiento abierto con entradas en línea */
 typedef struct {
-	ListIndexEntry **entries;
+	HashIndexEntry *entries;
 	unsigned long allocated;
 	unsigned long size;
-} ListIndex;
+	unsigned long used;
+} HashIndex;
 
-ListIndex *collection_list_index_new();
-void collection_list_index_add(ListIndex *, long, void *);
-void *collection_list_index_get(ListIndex *, long);
-void *collection_list_index_remove(ListIndex *, long);
-void collection_list_index_destory(ListIndex *);
-void collection_list_index_add_last(ListIndex *, void *);
-void *collection_list_index_get_last(ListIndex *);
-void *collection_list_index_remove_last(ListIndex *);
+HashIndex *collection_hash_index_new();
+void collection_hash_index_put(HashIndex *, long, void *);
+void *collection_hash_index_get(HashIndex *, long);
+void *collection_hash_index_remove(HashIndex *, long);
+void collection_hash_index_destroy(HashIndex *);
 
 #ifdef	__cplusplus
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * File:   ayatana_GMainContext.h
+ */
+
+#include <glib.h>
+
+#ifndef AYATANA_GMAINCONTEXT_H
+#define	AYATANA_GMAINCONTEXT_H
+
+#ifdef	__cplusplus
+extern "C" {
+#endif
+
+/* contexto privado de jayatana, los observadores, servidores de menus y
+ * comandos se atienden en el hilo de GMainLoop sin competir con otros
+ * usuarios de GLib en la JVM. Las fuentes que libdbusmenu agrega con
+ * g_idle_add al contexto global también se despachan en ese hilo mientras
+ * ningún otro hilo sea dueño del contexto global */
+extern GMainContext *gmaincontext;
+
+
+#ifdef	__cplusplus
+}
+#endif
+
+#endif	/* AYATANA_GMAINCONTEXT_H */
@@ -97,50 +97,25 @@ int jkeycode_to_xkey_map(int keycode) {
 		case JK_OPEN_BRACKET: return XK_bracketleft;
 		case JK_BACK_SLASH: return XK_backslash;
 		case JK_CLOSE_BRACKET: return XK_bracketright;
-			/*case JK_NUMPAD0: return XK_;
-			case JK_NUMPAD1: return XK_;
-			case JK_NUMPAD2: return XK_;
-			case JK_NUMPAD3: return XK_;
-			case JK_NUMPAD4: return XK_;
-			case JK_NUMPAD5: return XK_;
-			case JK_NUMPAD6: return XK_;
-			case JK_NUMPAD7: return XK_;
-			case JK_NUMPAD8: return XK_;
-			case JK_NUMPAD9: return XK_;*/
+		case JK_NUMPAD0: return XK_KP_0;
+		case JK_NUMPAD1: return XK_KP_1;
+		case JK_NUMPAD2: return XK_KP_2;
+		case JK_NUMPAD3: return XK_KP_3;
+		case JK_NUMPAD4: return XK_KP_4;
+		case JK_NUMPAD5: return XK_KP_5;
+		case JK_NUMPAD6: return XK_KP_6;
+		case JK_NUMPAD7: return XK_KP_7;
+		case JK_NUMPAD8: return XK_KP_8;
+		case JK_NUMPAD9: return XK_KP_9;
 		case JK_MULTIPLY: return XK_multiply;
-			/*case JK_ADD: return XK_;
-			case JK_SEPARATER: return XK_;
-			case JK_SEPARATOR: return XK_;
-			case JK_SUBTRACT: return XK_;
-			case JK_DECIMAL: return XK_; */
+		case JK_ADD: return XK_KP_Add;
+		case JK_SEPARATOR: return XK_KP_Separator;
+		case JK_SUBTRACT: return XK_KP_Subtract;
+		case JK_DECIMAL: return XK_KP_Decimal;
 		case JK_DIVIDE: return XK_division;
 		case JK_DELETE: return XK_Delete;
 		case JK_NUM_LOCK: return XK_Num_Lock;
 		case JK_SCROLL_LOCK: return XK_Scroll_Lock;
-			/*case JK_F1: return XK_;
-			case JK_F2: return XK_;
-			case JK_F3: return XK_;
-			case JK_F4: return XK_;
-			case JK_F5: return XK_;
-			case JK_F6: return XK_;
-			case JK_F7: return XK_;
-			case JK_F8: return XK_;
-			case JK_F9: return XK_;
-			case JK_F10: return XK_;
-			case JK_F11: return XK_;
-			case JK_F12: return XK_;
-			case JK_F13: return XK_;
-			case JK_F14: return XK_;
-			case JK_F15: return XK_;
-			case JK_F16: return XK_;
-			case JK_F17: return XK_;
-			case JK_F18: return XK_;
-			case JK_F19: return XK_;
-			case JK_F20: return XK_;
-			case JK_F21: return XK_;
-			case JK_F22: return XK_;
-			case JK_F23: return XK_;
-			case JK_F24: return XK_;*/
 		case JK_PRINTSCREEN: return XK_Print;
 		case JK_INSERT: return XK_Insert;
 		case JK_HELP: return XK_Help;
@@ -224,20 +199,49 @@ int jkeycode_to_xkey_map(int keycode) {
 	}
 }
 
-char *jkeycode_to_xkey(int keycode) {
-	int code = 0;
-	
+int jkeycode_to_keysym(int keycode) {
 	if (keycode >= JK_A && keycode <= JK_Z)
-		code = keycode - JK_A + XK_A;
+		return keycode - JK_A + XK_A;
 	else if (keycode >= JK_F1 && keycode <= JK_F12)
-		code = keycode - JK_F1 + XK_F1;
+		return keycode - JK_F1 + XK_F1;
+	else if (keycode >= JK_F13 && keycode <= JK_F24)
+		return keycode - JK_F13 + XK_F13;
 	else if (keycode >= JK_0 && keycode <= JK_9)
-		code = keycode - JK_0 + XK_0;
+		return keycode - JK_0 + XK_0;
 	else
-		code = jkeycode_to_xkey_map(keycode);
-	
+		return jkeycode_to_xkey_map(keycode);
+}
+
+/* tabla densa de nombres de teclas para los codigos java mas comunes */
+#define JK_TABLE_SIZE 0x0300
+const char *jkeycode_table[JK_TABLE_SIZE];
+/* nombres de las teclas de función F13 a F24 */
+const char *jkeycode_table_f[JK_F24 - JK_F13 + 1];
+int jkeycode_table_ready = 0;
+
+/* obtiene el nombre de tecla X de un codigo java */
+const char *jkeycode_to_xkey_lookup(int keycode) {
+	int code = jkeycode_to_keysym(keycode);
 	if (code == 0)
 		return NULL;
-	
 	return XKeysymToString(code);
 }
+void jkeycode_to_xkey_initialize() {
+	int keycode;
+	if (jkeycode_table_ready)
+		return;
+	for (keycode = 0; keycode < JK_TABLE_SIZE; keycode++)
+		jkeycode_table[keycode] = jkeycode_to_xkey_lookup(keycode);
+	for (keycode = JK_F13; keycode <= JK_F24; keycode++)
+		jkeycode_table_f[keycode - JK_F13] = jkeycode_to_xkey_lookup(keycode);
+	jkeycode_table_ready = 1;
+}
+const char *jkeycode_to_xkey(int keycode) {
+	if (jkeycode_table_ready) {
+		if (keycode >= 0 && keycode < JK_TABLE_SIZE)
+			return jkeycode_table[keycode];
+		if (keycode >= JK_F13 && keycode <= JK_F24)
+			return jkeycode_table_f[keycode - JK_F13];
+	}
+	return jkeycode_to_xkey_lookup(keycode);
+}
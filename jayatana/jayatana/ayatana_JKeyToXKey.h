@@ -225,7 +225,9 @@ extern "C" {
 #define JK_ALT_GRAPH 0xFF7E
 #define JK_BEGIN 0xFF58
 
-char *jkeycode_to_xkey(int);
+/* inicializa la tabla de nombres de teclas, debe invocarse antes de exportar menus */
+void jkeycode_to_xkey_initialize();
+const char *jkeycode_to_xkey(int);
 
 #ifdef	__cplusplus
 }
@@ -37,3 +37,16 @@ jint JNI_OnLoad(JavaVM *vm, void *reserved) {
 void JNI_OnUnload(JavaVM *vm, void *reserved) {
 	
 }
+
+JNIEnv *jvm_get_env() {
+	JNIEnv *env = NULL;
+	if ((*jvm)->GetEnv(jvm, (void**)&env, JNI_VERSION_1_6) == JNI_EDETACHED) {
+		// el hilo queda adjunto hasta que termine
+		JavaVMAttachArgs args;
+		args.version = JNI_VERSION_1_6;
+		args.name = "jayatana-native";
+		args.group = NULL;
+		(*jvm)->AttachCurrentThreadAsDaemon(jvm, (void**)&env, &args);
+	}
+	return env;
+}
@@ -40,6 +40,8 @@ JavaVM *jvm;
 	
 jint JNI_OnLoad(JavaVM *, void *);
 void JNI_OnUnload(JavaVM *, void *);
+/* obtiene el entorno java del hilo actual, lo adjunta como daemon si no lo esta */
+JNIEnv *jvm_get_env();
 
 
 #ifdef	__cplusplus
@@ -30,18 +30,22 @@
 #include "org_java_ayatana_ApplicationMenu.h"
 #include <jawt_md.h>
 #include <stdlib.h>
+#include <string.h>
 #include <strings.h>
 #include <glib.h>
 #include <gio/gio.h>
 #include <libdbusmenu-glib/server.h>
 #include <libdbusmenu-glib/client.h>
 #include "ayatana_JVM.h"
+#include "ayatana_GMainContext.h"
 #include "ayatana_Collections.h"
 #include "ayatana_JKeyToXKey.h"
 
 
 //propiedades de Jayatana
-#define JAYATANA_HASHCODE "jayatana-hashcode"
+#define JAYATANA_ID "jayatana-id"
+#define JAYATANA_INSTANCE "jayatana-instance"
+#define JAYATANA_TYPE "jayatana-type"
 
 //estrucutra de instancia
 typedef struct {
@@ -50,29 +54,65 @@ typedef struct {
 	gchar *windowxidpath;
 	guint watcher;
 	gboolean installed;
+	gboolean registering;
 	DbusmenuServer *menuserver;
 	DbusmenuMenuitem *menuroot;
-	DbusmenuMenuitem *menucurrent;
+	GHashTable *items;
+	volatile gint liveitems;
 } JavaInstance;
-ListIndex *jinstances;
-ListIndex *jinstancesstack;
-JavaInstance *current_jinstance;
+//instancias por identificador de ventana
+HashIndex *jinstances;
+G_LOCK_DEFINE_STATIC(jinstances);
+/* busca la instancia de la ventana, NULL si no existe o ya se liberaron las instancias */
+JavaInstance *lookup_instance(jlong windowxid) {
+	JavaInstance *jinstance = NULL;
+	G_LOCK(jinstances);
+	if (jinstances != NULL)
+		jinstance = (JavaInstance *)collection_hash_index_get(jinstances, windowxid);
+	G_UNLOCK(jinstances);
+	return jinstance;
+}
+GAsyncQueue *commands;
+//identificadores java resueltos al inicializar
+jclass jclass_ApplicationMenu;
+jmethodID mid_install;
+jmethodID mid_uninstall;
+jmethodID mid_itemAboutToShow;
+jmethodID mid_itemAfterShow;
+jmethodID mid_itemActivated;
+//contadores de recursos nativos, ver AyatanaManagement.java
+#define JAYATANA_COUNTER_MENUITEMS 0
+#define JAYATANA_COUNTER_INSTANCES 1
+#define JAYATANA_COUNTER_GLOBALREFS 2
+#define JAYATANA_COUNTER_PATHS 3
+#define JAYATANA_COUNTER_HANDLERS 4
+#define JAYATANA_COUNTER_RECYCLED 5
+#define JAYATANA_COUNTER_SIZE 6
+volatile gint counters[JAYATANA_COUNTER_SIZE];
 
 
 /* control global de integración appmenu */
 JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_nativeInitialize
   (JNIEnv *env, jclass thatclass) {
-	jinstances = collection_list_index_new();
-	jinstancesstack = collection_list_index_new();
+	jinstances = collection_hash_index_new();
+	commands = g_async_queue_new();
+	jkeycode_to_xkey_initialize();
+	jclass_ApplicationMenu = (jclass)(*env)->NewGlobalRef(env, thatclass);
+	g_atomic_int_inc(&counters[JAYATANA_COUNTER_GLOBALREFS]);
+	mid_install = (*env)->GetMethodID(env, thatclass, "install", "()V");
+	mid_uninstall = (*env)->GetMethodID(env, thatclass, "uninstall", "()V");
+	mid_itemAboutToShow = (*env)->GetMethodID(env, thatclass, "itemAboutToShow", "(I)V");
+	mid_itemAfterShow = (*env)->GetMethodID(env, thatclass, "itemAfterShow", "(I)V");
+	mid_itemActivated = (*env)->GetMethodID(env, thatclass, "itemActivated", "(I)V");
 }
 JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_nativeUninitialize
   (JNIEnv *env, jclass thatclass) {
-	collection_list_index_destory(jinstancesstack);
-	collection_list_index_destory(jinstances);
-}
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setCurrent
-  (JNIEnv *env, jobject that, jlong windowxid) {
-	current_jinstance = (JavaInstance *)collection_list_index_get(jinstances, windowxid);
+	G_LOCK(jinstances);
+	collection_hash_index_destroy(jinstances);
+	jinstances = NULL;
+	G_UNLOCK(jinstances);
+	(*env)->DeleteGlobalRef(env, jclass_ApplicationMenu);
+	g_atomic_int_add(&counters[JAYATANA_COUNTER_GLOBALREFS], -1);
 }
 
 
@@ -106,9 +146,69 @@ JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getWindowXID
 
 
 
+/* estadisticas de latencia de invocaciones a java, en microsegundos,
+ * se leen desde otros hilos por lo que se protegen con un candado */
+gint64 upcall_count = 0;
+gint64 upcall_time = 0;
+gint64 upcall_max_time = 0;
+G_LOCK_DEFINE_STATIC(upcall_stats);
+
+/* invoca un método java de la instancia, los métodos sin argumentos ignoran el identificador */
+void upcall(JavaInstance *jinstance, jmethodID mid, jint id) {
+	gint64 start = g_get_monotonic_time();
+	JNIEnv *env = jvm_get_env();
+	jvalue args[1];
+	args[0].i = id;
+	(*env)->CallVoidMethodA(env, jinstance->that, mid, args);
+	// el hilo permanece adjunto, una excepción pendiente invalidaría las
+	// siguientes invocaciones
+	if ((*env)->ExceptionCheck(env)) {
+		(*env)->ExceptionDescribe(env);
+		(*env)->ExceptionClear(env);
+	}
+	gint64 elapsed = g_get_monotonic_time() - start;
+	G_LOCK(upcall_stats);
+	upcall_count++;
+	upcall_time += elapsed;
+	if (elapsed > upcall_max_time)
+		upcall_max_time = elapsed;
+	G_UNLOCK(upcall_stats);
+}
+/* lee una estadistica de latencia sin valores parciales */
+jlong upcall_stat(gint64 *stat) {
+	G_LOCK(upcall_stats);
+	jlong value = (jlong)*stat;
+	G_UNLOCK(upcall_stats);
+	return value;
+}
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getUpcallCount
+  (JNIEnv *env, jclass thatclass) {
+	return upcall_stat(&upcall_count);
+}
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getUpcallTime
+  (JNIEnv *env, jclass thatclass) {
+	return upcall_stat(&upcall_time);
+}
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getUpcallMaxTime
+  (JNIEnv *env, jclass thatclass) {
+	return upcall_stat(&upcall_max_time);
+}
+
+
+
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getNativeCounter
+  (JNIEnv *env, jclass thatclass, jint counter) {
+	if (counter < 0 || counter >= JAYATANA_COUNTER_SIZE)
+		return -1;
+	return (jlong)g_atomic_int_get(&counters[counter]);
+}
+
+
+
 /* Creacion del identificador de menu*/
 char *get_windowxid_path(long xid) {
 	char *xid_path;
+	g_atomic_int_inc(&counters[JAYATANA_COUNTER_PATHS]);
 	xid_path = (char *)malloc(sizeof(char *)*50);
 	sprintf(xid_path, "/com/canonical/menu/%lx", xid);
 	return xid_path;
@@ -117,46 +217,125 @@ char *get_windowxid_path(long xid) {
 /* control para eliminar menus*/
 void destroy_menuitem (gpointer data) {
 	if (data != NULL) {
-		g_list_free_full(dbusmenu_menuitem_take_children((DbusmenuMenuitem *)data), destroy_menuitem);
-		g_object_unref(G_OBJECT(data));
+		DbusmenuMenuitem *item = (DbusmenuMenuitem *)data;
+		g_list_free_full(dbusmenu_menuitem_take_children(item), destroy_menuitem);
+		JavaInstance *jinstance = (JavaInstance *)g_object_get_data(G_OBJECT(item), JAYATANA_INSTANCE);
+		if (jinstance != NULL) {
+			g_atomic_int_add(&jinstance->liveitems, -1);
+			g_atomic_int_add(&counters[JAYATANA_COUNTER_MENUITEMS], -1);
+			// los separadores no tienen identificador ni eventos
+			if (dbusmenu_menuitem_property_exist(item, JAYATANA_ID))
+				g_atomic_int_add(&counters[JAYATANA_COUNTER_HANDLERS], -1);
+			gpointer key = GINT_TO_POINTER(dbusmenu_menuitem_property_get_int(item, JAYATANA_ID));
+			if (g_hash_table_lookup(jinstance->items, key) == item)
+				g_hash_table_remove(jinstance->items, key);
+		}
+		g_object_unref(G_OBJECT(item));
 	}
 }
+/* busca un menu exportado por identificador */
+DbusmenuMenuitem *find_menuitem(JavaInstance *jinstance, jint id) {
+	return (DbusmenuMenuitem *)g_hash_table_lookup(jinstance->items, GINT_TO_POINTER(id));
+}
+
+/* proxy compartido del registrador de menus y ventanas esperando al proxy */
+GDBusProxy *registrar_proxy = NULL;
+gboolean registrar_proxy_pending = FALSE;
+GList *registrar_pending = NULL;
+
+/* elimina el servidor de menus de la instancia */
+void destroy_menuserver(JavaInstance *jinstance) {
+	g_list_free_full(dbusmenu_menuitem_take_children(jinstance->menuroot), destroy_menuitem);
+	g_object_unref(jinstance->menuroot);
+	g_object_unref(jinstance->menuserver);
+	free(jinstance->windowxidpath);
+	g_atomic_int_add(&counters[JAYATANA_COUNTER_MENUITEMS], -1);
+	g_atomic_int_add(&counters[JAYATANA_COUNTER_PATHS], -1);
+}
+/* respuesta del registro de ventana, se instala java si la ventana sigue registrandose */
+void on_window_registered(GObject *source, GAsyncResult *res, gpointer user_data) {
+	jlong *windowxid = (jlong *)user_data;
+	GVariant *result = g_dbus_proxy_call_finish(G_DBUS_PROXY(source), res, NULL);
+	if (result != NULL)
+		g_variant_unref(result);
+	JavaInstance *jinstance = lookup_instance(*windowxid);
+	g_free(windowxid);
+	if (jinstance == NULL || !jinstance->registering)
+		return;
+	jinstance->registering = FALSE;
+	if (result == NULL) {
+		// sin registro se mantiene la barra de menus de java
+		destroy_menuserver(jinstance);
+		return;
+	}
+	// instalar java
+	upcall(jinstance, mid_install, 0);
+	// marcar como instalado
+	jinstance->installed = TRUE;
+}
+/* registra la ventana en el registrador de menus sin esperar la respuesta */
+void register_window(JavaInstance *jinstance) {
+	jlong *windowxid = g_new(jlong, 1);
+	*windowxid = jinstance->windowxid;
+	g_dbus_proxy_call(
+			registrar_proxy, "RegisterWindow",
+			g_variant_new("(uo)", (guint32)jinstance->windowxid, jinstance->windowxidpath),
+			G_DBUS_CALL_FLAGS_NONE,
+			-1, NULL, on_window_registered, windowxid);
+}
+/* creación del proxy compartido, registra las ventanas en espera */
+void on_registrar_proxy(GObject *source, GAsyncResult *res, gpointer user_data) {
+	registrar_proxy = g_dbus_proxy_new_for_bus_finish(res, NULL);
+	registrar_proxy_pending = FALSE;
+	GList *pending = g_list_reverse(registrar_pending);
+	registrar_pending = NULL;
+	GList *node;
+	for (node = pending; node != NULL; node = node->next) {
+		JavaInstance *jinstance = lookup_instance(*(jlong *)node->data);
+		if (jinstance == NULL || !jinstance->registering)
+			continue;
+		if (registrar_proxy != NULL) {
+			register_window(jinstance);
+		} else {
+			jinstance->registering = FALSE;
+			destroy_menuserver(jinstance);
+		}
+	}
+	g_list_free_full(pending, g_free);
+}
 
 /* eventos de existencia del application menu */
 void on_registrar_available(GDBusConnection *connection, const gchar *name, const gchar *name_owner, gpointer user_data) {
 	JavaInstance *jinstance = (JavaInstance *)user_data;
-	if (!jinstance->installed) {
+	if (!jinstance->installed && !jinstance->registering) {
 		// generar base de menu
 		jinstance->windowxidpath = get_windowxid_path(jinstance->windowxid);
 		DbusmenuServer *menuserver = dbusmenu_server_new(jinstance->windowxidpath);
 		DbusmenuMenuitem *menuroot = dbusmenu_menuitem_new();
+		g_atomic_int_inc(&counters[JAYATANA_COUNTER_MENUITEMS]);
 		dbusmenu_server_set_root(menuserver, menuroot);
 		jinstance->menuserver = menuserver;
 		jinstance->menuroot = menuroot;
-		jinstance->menucurrent = menuroot;
-		// registar menu de aplicaciones
-		GDBusProxy *proxy = g_dbus_proxy_new_for_bus_sync (
-				G_BUS_TYPE_SESSION,
-				G_DBUS_PROXY_FLAGS_NONE,
-				NULL,
-				"com.canonical.AppMenu.Registrar",
-				"/com/canonical/AppMenu/Registrar",
-				"com.canonical.AppMenu.Registrar",
-				NULL, NULL);
-		g_dbus_proxy_call_sync(
-				proxy, "RegisterWindow",
-				g_variant_new("(uo)", (guint32)jinstance->windowxid, jinstance->windowxidpath),
-				G_DBUS_CALL_FLAGS_NONE,
-				-1, NULL, NULL);
-		// instalar java
-		JNIEnv *env = NULL;
-		(*jvm)->AttachCurrentThread(jvm, (void**)&env, NULL);
-		jclass thatclass = (*env)->GetObjectClass(env, jinstance->that);
-		jmethodID mid = (*env)->GetMethodID(env, thatclass, "install", "()V");
-		(*env)->CallVoidMethod(env, jinstance->that, mid);
-		(*jvm)->DetachCurrentThread(jvm);
-		// marcar como instalado
-		jinstance->installed = TRUE;
+		// registar menu de aplicaciones, las ventanas se registran en paralelo
+		jinstance->registering = TRUE;
+		if (registrar_proxy != NULL) {
+			register_window(jinstance);
+		} else {
+			jlong *windowxid = g_new(jlong, 1);
+			*windowxid = jinstance->windowxid;
+			registrar_pending = g_list_prepend(registrar_pending, windowxid);
+			if (!registrar_proxy_pending) {
+				registrar_proxy_pending = TRUE;
+				g_dbus_proxy_new_for_bus(
+						G_BUS_TYPE_SESSION,
+						G_DBUS_PROXY_FLAGS_DO_NOT_LOAD_PROPERTIES | G_DBUS_PROXY_FLAGS_DO_NOT_CONNECT_SIGNALS,
+						NULL,
+						"com.canonical.AppMenu.Registrar",
+						"/com/canonical/AppMenu/Registrar",
+						"com.canonical.AppMenu.Registrar",
+						NULL, on_registrar_proxy, NULL);
+			}
+		}
 	}
 }
 /* eventos de existencia del application menu */
@@ -164,32 +343,33 @@ void on_registrar_unavailable(GDBusConnection *connection, const gchar *name, gp
 	JavaInstance *jinstance = (JavaInstance *)user_data;
 	if (jinstance->installed) {
 		// eliminar menus
-		g_list_free_full(dbusmenu_menuitem_take_children(jinstance->menuroot), destroy_menuitem);
-		g_object_unref(jinstance->menuroot);
-		g_object_unref(jinstance->menuserver);
+		destroy_menuserver(jinstance);
 		// desinstalar java
-		JNIEnv *env = NULL;
-		(*jvm)->AttachCurrentThread(jvm, (void**)&env, NULL);
-		jclass thatclass = (*env)->GetObjectClass(env, jinstance->that);
-		jmethodID mid = (*env)->GetMethodID(env, thatclass, "uninstall", "()V");
-		(*env)->CallVoidMethod(env, jinstance->that, mid);
-		(*jvm)->DetachCurrentThread(jvm);
-		// eliminar path
-		free(jinstance->windowxidpath);
+		upcall(jinstance, mid_uninstall, 0);
 		// marcar como desinstalado
 		jinstance->installed = FALSE;
+	} else if (jinstance->registering) {
+		// la respuesta pendiente se descarta
+		destroy_menuserver(jinstance);
+		jinstance->registering = FALSE;
 	}
 }
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_registerWatcher
-  (JNIEnv *env, jobject that, jlong windowxid) {
+/* registra el observador del menu de aplicaciones, se ejecuta en el hilo de GMainLoop */
+void register_watcher(jlong windowxid, jobject that) {
 	JavaInstance *jinstance = (JavaInstance *)malloc(sizeof(JavaInstance));
+	g_atomic_int_inc(&counters[JAYATANA_COUNTER_INSTANCES]);
 	jinstance->windowxid = windowxid;
 	jinstance->installed = FALSE;
+	jinstance->registering = FALSE;
+	jinstance->items = g_hash_table_new(g_direct_hash, g_direct_equal);
+	jinstance->liveitems = 0;
 	// agregar instancia
-	current_jinstance = jinstance;
-	collection_list_index_add(jinstances, windowxid, jinstance);
+	G_LOCK(jinstances);
+	if (jinstances != NULL)
+		collection_hash_index_put(jinstances, windowxid, jinstance);
+	G_UNLOCK(jinstances);
 	// registro de variables java
-	jinstance->that = (*env)->NewGlobalRef(env, that);
+	jinstance->that = that;
 	// revisor de menu de aplicaciones
 	guint watcher = g_bus_watch_name(
 			G_BUS_TYPE_SESSION,
@@ -200,67 +380,68 @@ JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_registerWatcher
 			jinstance, NULL);
 	jinstance->watcher = watcher;
 }
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_unregisterWatcher
-  (JNIEnv *env, jobject that, jlong windowxid) {
-	JavaInstance *jinstance = (JavaInstance *)collection_list_index_remove(jinstances, windowxid);
+/* desregistra el observador del menu de aplicaciones, se ejecuta en el hilo de GMainLoop */
+void unregister_watcher(JavaInstance *jinstance) {
+	G_LOCK(jinstances);
+	if (jinstances != NULL)
+		collection_hash_index_remove(jinstances, jinstance->windowxid);
+	G_UNLOCK(jinstances);
 	g_bus_unwatch_name(jinstance->watcher);
 	if (jinstance->installed) {
 		// eliminar menus
-		g_list_free_full(dbusmenu_menuitem_take_children(jinstance->menuroot), destroy_menuitem);
-		g_object_unref(jinstance->menuroot);
-		g_object_unref(jinstance->menuserver);
+		destroy_menuserver(jinstance);
 		// desinstalar
-		jclass thatclass = (*env)->GetObjectClass(env, jinstance->that);
-		jmethodID mid = (*env)->GetMethodID(env, thatclass, "uninstall", "()V");
-		(*env)->CallVoidMethod(env, jinstance->that, mid);
-		// eliminar path
-		free(jinstance->windowxidpath);
+		upcall(jinstance, mid_uninstall, 0);
+	} else if (jinstance->registering) {
+		destroy_menuserver(jinstance);
 	}
 	// deregistro de variables java
+	JNIEnv *env = jvm_get_env();
 	(*env)->DeleteGlobalRef(env, jinstance->that);
+	g_atomic_int_add(&counters[JAYATANA_COUNTER_GLOBALREFS], -1);
 	//eliminar instancia
+	g_hash_table_destroy(jinstance->items);
 	free(jinstance);
+	g_atomic_int_add(&counters[JAYATANA_COUNTER_INSTANCES], -1);
+}
+
+
+/* cantidad de menus vivos de la ventana, se puede invocar desde cualquier hilo */
+JNIEXPORT jint JNICALL Java_org_java_ayatana_ApplicationMenu_getLiveMenuItems
+  (JNIEnv *env, jobject that, jlong windowxid) {
+	jint liveitems = -1;
+	G_LOCK(jinstances);
+	JavaInstance *jinstance = jinstances == NULL ? NULL
+			: (JavaInstance *)collection_hash_index_get(jinstances, windowxid);
+	if (jinstance != NULL)
+		liveitems = g_atomic_int_get(&jinstance->liveitems);
+	G_UNLOCK(jinstances);
+	return liveitems;
 }
 
 
 /* evento después de mostrar el menu */
 void item_event(DbusmenuMenuitem *item, const char *event) {
 	if (strcmp(DBUSMENU_MENUITEM_EVENT_OPENED, event) == 0) {
-		JavaInstance *jinstance = (JavaInstance *)current_jinstance;
-		collection_list_index_add_last(jinstancesstack, jinstance);
-		//inicializar menu
-		jinstance->menucurrent = item;
-		g_list_free_full(dbusmenu_menuitem_take_children(item), destroy_menuitem);
-		// invocar generacion de menus
-		JNIEnv *env = NULL;
-		(*jvm)->AttachCurrentThread(jvm, (void**)&env, NULL);
-		jclass thatclass = (*env)->GetObjectClass(env, jinstance->that);
-		jmethodID mid = (*env)->GetMethodID(env, thatclass, "itemAboutToShow", "(I)V");
-		(*env)->CallVoidMethod(env, jinstance->that, mid,
-				dbusmenu_menuitem_property_get_int(item, JAYATANA_HASHCODE));
-		(*jvm)->DetachCurrentThread(jvm);
+		JavaInstance *jinstance = (JavaInstance *)g_object_get_data(G_OBJECT(item), JAYATANA_INSTANCE);
+		if (jinstance == NULL)
+			return;
+		// invocar generacion de menus, los hijos actuales se mantienen
+		// hasta que java publique los nuevos
+		upcall(jinstance, mid_itemAboutToShow, dbusmenu_menuitem_property_get_int(item, JAYATANA_ID));
 	} else if (strcmp(DBUSMENU_MENUITEM_EVENT_CLOSED, event) == 0) {
-		JNIEnv *env = NULL;
-		JavaInstance *jinstance = (JavaInstance *)collection_list_index_get_last(jinstancesstack);
-		(*jvm)->AttachCurrentThread(jvm, (void**)&env, NULL);
-		jclass thatclass = (*env)->GetObjectClass(env, jinstance->that);
-		jmethodID mid = (*env)->GetMethodID(env, thatclass, "itemAfterShow", "(I)V");
-		(*env)->CallVoidMethod(env, jinstance->that, mid,
-				dbusmenu_menuitem_property_get_int(item, JAYATANA_HASHCODE));
-		(*jvm)->DetachCurrentThread(jvm);
+		// la instancia es la del submenu, los identificadores son por ventana
+		JavaInstance *jinstance = (JavaInstance *)g_object_get_data(G_OBJECT(item), JAYATANA_INSTANCE);
+		if (jinstance == NULL)
+			return;
+		upcall(jinstance, mid_itemAfterShow, dbusmenu_menuitem_property_get_int(item, JAYATANA_ID));
 	}
 }
 /* evento de actviar el menu*/
 void item_activated (DbusmenuMenuitem *item, guint timestamp, gpointer user_data) {
 	JavaInstance *jinstance = (JavaInstance *)user_data;
 	// invocar event de menu
-	JNIEnv *env = NULL;
-	(*jvm)->AttachCurrentThread(jvm, (void**)&env, NULL);
-	jclass thatclass = (*env)->GetObjectClass(env, jinstance->that);
-	jmethodID mid = (*env)->GetMethodID(env, thatclass, "itemActivated", "(I)V");
-	(*env)->CallVoidMethod(env, jinstance->that, mid,
-			dbusmenu_menuitem_property_get_int(item, JAYATANA_HASHCODE));
-	(*jvm)->DetachCurrentThread(jvm);
+	upcall(jinstance, mid_itemActivated, dbusmenu_menuitem_property_get_int(item, JAYATANA_ID));
 	
 	DbusmenuMenuitem *parent = dbusmenu_menuitem_get_parent(item);
 	while (parent != NULL && parent != jinstance->menuroot) {
@@ -268,36 +449,23 @@ void item_activated (DbusmenuMenuitem *item, guint timestamp, gpointer user_data
 		parent = dbusmenu_menuitem_get_parent(parent);
 	}
 }
-/* agrega un menu padre */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenu
-  (JNIEnv *env, jobject that, jint hashcode, jstring label, jboolean enabled) {
-	if (current_jinstance != NULL) {
-		DbusmenuMenuitem *item = dbusmenu_menuitem_new();
-		const char *cclabel = (*env)->GetStringUTFChars(env, label, 0);
-		dbusmenu_menuitem_property_set(item, DBUSMENU_MENUITEM_PROP_LABEL, cclabel);
-		dbusmenu_menuitem_property_set(item, DBUSMENU_MENUITEM_PROP_CHILD_DISPLAY,
-				DBUSMENU_MENUITEM_CHILD_DISPLAY_SUBMENU);
-		dbusmenu_menuitem_property_set_bool(item, DBUSMENU_MENUITEM_PROP_ENABLED, (gboolean)enabled);
-		dbusmenu_menuitem_property_set_int(item, JAYATANA_HASHCODE, hashcode);
-		g_signal_connect(G_OBJECT(item), DBUSMENU_MENUITEM_SIGNAL_EVENT,
-				G_CALLBACK(item_event), NULL);
-		dbusmenu_menuitem_child_append(current_jinstance->menucurrent, item);
-
-		DbusmenuMenuitem *foo = dbusmenu_menuitem_new();
-		dbusmenu_menuitem_property_set(foo, DBUSMENU_MENUITEM_PROP_LABEL, "");
-		dbusmenu_menuitem_child_append(item, foo);
-	}
-}
-/* elimina todos los menu */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_removeAll
-  (JNIEnv *env, jobject that) {
-	if (current_jinstance != NULL) {
-		g_list_free_full(dbusmenu_menuitem_take_children(current_jinstance->menuroot), destroy_menuitem);
-		current_jinstance->menucurrent = current_jinstance->menuroot;
-	}
-}
-/* establece el acelerador de menu */
-void set_menuitem_shortcut(DbusmenuMenuitem *item, jint modifiers, jint keycode) {
+/* aceleradores compartidos entre menus por modificadores y tecla, solo se usan en el hilo de GMainLoop */
+#define JAYATANA_SHORTCUT_CACHE_SIZE 1024
+#define JAYATANA_SHORTCUT_MODIFIERS (JK_SHIFT | JK_CTRL | JK_ALT)
+GHashTable *shortcuts = NULL;
+/* obtiene el acelerador compartido, los aceleradores repetidos usan la misma instancia */
+GVariant *shortcut_variant(jint modifiers, jint keycode) {
+	modifiers &= JAYATANA_SHORTCUT_MODIFIERS;
+	// la clave es el par completo de modificadores y tecla
+	gint64 key = ((gint64)(guint32)modifiers << 32) | (guint32)keycode;
+	if (shortcuts == NULL)
+		shortcuts = g_hash_table_new_full(g_int64_hash, g_int64_equal, g_free, (GDestroyNotify)g_variant_unref);
+	GVariant *variant = (GVariant *)g_hash_table_lookup(shortcuts, &key);
+	if (variant != NULL)
+		return variant;
+	if (g_hash_table_size(shortcuts) >= JAYATANA_SHORTCUT_CACHE_SIZE)
+		// los menus mantienen sus propias referencias
+		g_hash_table_remove_all(shortcuts);
 	GVariantBuilder builder;
 	g_variant_builder_init(&builder, G_VARIANT_TYPE_ARRAY);
 	if ((modifiers & JK_SHIFT) == JK_SHIFT)
@@ -311,69 +479,458 @@ void set_menuitem_shortcut(DbusmenuMenuitem *item, jint modifiers, jint keycode)
 	GVariant *inside = g_variant_builder_end(&builder);
 	g_variant_builder_init(&builder, G_VARIANT_TYPE_ARRAY);
 	g_variant_builder_add_value(&builder, inside);
-	GVariant *outsidevariant = g_variant_builder_end(&builder);
-	dbusmenu_menuitem_property_set_variant(item, DBUSMENU_MENUITEM_PROP_SHORTCUT, outsidevariant);
-}
-/* agrega un menu hoja */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenuItem
-  (JNIEnv *env, jobject that, jint hashcode, jstring label, jboolean enabled, jint modifiers, jint keycode) {
-	if (current_jinstance != NULL) {
-		DbusmenuMenuitem *item = dbusmenu_menuitem_new();
-		const char *cclabel = (*env)->GetStringUTFChars(env, label, 0);
-		dbusmenu_menuitem_property_set(item, DBUSMENU_MENUITEM_PROP_LABEL, cclabel);
-		dbusmenu_menuitem_property_set_bool(item, DBUSMENU_MENUITEM_PROP_ENABLED, (gboolean)enabled);
-		dbusmenu_menuitem_property_set_int(item, JAYATANA_HASHCODE, hashcode);
-		g_signal_connect(G_OBJECT(item), DBUSMENU_MENUITEM_SIGNAL_ITEM_ACTIVATED,
-				G_CALLBACK(item_activated), current_jinstance);
-		if (modifiers > -1 && keycode > -1)
-			set_menuitem_shortcut(item, modifiers, keycode);
-		dbusmenu_menuitem_child_append(current_jinstance->menucurrent, item);
+	variant = g_variant_ref_sink(g_variant_builder_end(&builder));
+	gint64 *stored = g_new(gint64, 1);
+	*stored = key;
+	g_hash_table_insert(shortcuts, stored, variant);
+	return variant;
+}
+/* establece el acelerador de menu si cambio */
+void set_menuitem_shortcut(DbusmenuMenuitem *item, jint modifiers, jint keycode) {
+	GVariant *variant = shortcut_variant(modifiers, keycode);
+	GVariant *current = dbusmenu_menuitem_property_get_variant(item, DBUSMENU_MENUITEM_PROP_SHORTCUT);
+	if (current != variant)
+		dbusmenu_menuitem_property_set_variant(item, DBUSMENU_MENUITEM_PROP_SHORTCUT, variant);
+}
+/* bytes nativos en uso por comandos pendientes y etiquetas */
+volatile gint native_bytes = 0;
+/* etiquetas compartidas entre menus, solo se usan en el hilo de GMainLoop */
+#define JAYATANA_LABEL_CACHE_SIZE 4096
+GHashTable *labels = NULL;
+gint labels_bytes = 0;
+/* buffer reutilizable para terminar etiquetas del buffer de exportación */
+gchar *label_buffer = NULL;
+gsize label_buffer_size = 0;
+
+/* copia la etiqueta al buffer reutilizable y la termina en nulo */
+const gchar *label_buffer_copy(const char *data, jint length) {
+	if ((gsize)length + 1 > label_buffer_size) {
+		gsize size = label_buffer_size == 0 ? 256 : label_buffer_size;
+		while ((gsize)length + 1 > size)
+			size *= 2;
+		label_buffer = (gchar *)g_realloc(label_buffer, size);
+		g_atomic_int_add(&native_bytes, (gint)(size - label_buffer_size));
+		label_buffer_size = size;
 	}
+	memcpy(label_buffer, data, length);
+	label_buffer[length] = '\0';
+	return label_buffer;
 }
-/* agrega un menu opcional hoja */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenuItemRadio
-  (JNIEnv *env, jobject that, jint hashcode, jstring label, jboolean enabled, jint modifiers, jint keycode, jboolean selected) {
-	if (current_jinstance != NULL) {
-		DbusmenuMenuitem *item = dbusmenu_menuitem_new();
-		const char *cclabel = (*env)->GetStringUTFChars(env, label, 0);
-		dbusmenu_menuitem_property_set(item, DBUSMENU_MENUITEM_PROP_LABEL, cclabel);
-		dbusmenu_menuitem_property_set_bool(item, DBUSMENU_MENUITEM_PROP_ENABLED, (gboolean)enabled);
-		dbusmenu_menuitem_property_set_int(item, JAYATANA_HASHCODE, hashcode);
-		g_signal_connect(G_OBJECT(item), DBUSMENU_MENUITEM_SIGNAL_ITEM_ACTIVATED,
-				G_CALLBACK(item_activated), current_jinstance);
-		if (modifiers > -1 && keycode > -1)
-			set_menuitem_shortcut(item, modifiers, keycode);
-		dbusmenu_menuitem_property_set (item, DBUSMENU_MENUITEM_PROP_TOGGLE_TYPE, DBUSMENU_MENUITEM_TOGGLE_RADIO);
-		dbusmenu_menuitem_property_set_int(item, DBUSMENU_MENUITEM_PROP_TOGGLE_STATE,
-				selected ? DBUSMENU_MENUITEM_TOGGLE_STATE_CHECKED : DBUSMENU_MENUITEM_TOGGLE_STATE_UNCHECKED);
-		dbusmenu_menuitem_child_append(current_jinstance->menucurrent, item);
+/* obtiene la etiqueta compartida, las etiquetas repetidas usan la misma
+ * instancia, NULL si la etiqueta no es UTF-8 válido */
+GVariant *label_variant(const gchar *label) {
+	if (labels == NULL)
+		labels = g_hash_table_new_full(g_str_hash, g_str_equal, g_free, (GDestroyNotify)g_variant_unref);
+	GVariant *variant = (GVariant *)g_hash_table_lookup(labels, label);
+	if (variant == NULL) {
+		if (!g_utf8_validate(label, -1, NULL))
+			return NULL;
+		variant = g_variant_new_string(label);
+		if (variant == NULL)
+			return NULL;
+		if (g_hash_table_size(labels) >= JAYATANA_LABEL_CACHE_SIZE) {
+			// los menus mantienen sus propias referencias
+			g_hash_table_remove_all(labels);
+			g_atomic_int_add(&native_bytes, -labels_bytes);
+			labels_bytes = 0;
+		}
+		variant = g_variant_ref_sink(variant);
+		g_hash_table_insert(labels, g_strdup(label), variant);
+		// la clave copiada y los datos serializados del variant
+		gint bytes = (gint)(strlen(label) + 1 + g_variant_get_size(variant));
+		labels_bytes += bytes;
+		g_atomic_int_add(&native_bytes, bytes);
 	}
+	return variant;
 }
-/* agrega un menu verificación hoja */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenuItemCheck
-  (JNIEnv *env, jobject that, jint hashcode, jstring label, jboolean enabled, jint modifiers, jint keycode, jboolean selected) {
-	if (current_jinstance != NULL) {
-		DbusmenuMenuitem *item = dbusmenu_menuitem_new();
-		const char *cclabel = (*env)->GetStringUTFChars(env, label, 0);
-		dbusmenu_menuitem_property_set(item, DBUSMENU_MENUITEM_PROP_LABEL, cclabel);
-		dbusmenu_menuitem_property_set_bool(item, DBUSMENU_MENUITEM_PROP_ENABLED, (gboolean)enabled);
-		dbusmenu_menuitem_property_set_int(item, JAYATANA_HASHCODE, hashcode);
-		g_signal_connect(G_OBJECT(item), DBUSMENU_MENUITEM_SIGNAL_ITEM_ACTIVATED,
-				G_CALLBACK(item_activated), current_jinstance);
-		if (modifiers > -1 && keycode > -1)
-			set_menuitem_shortcut(item, modifiers, keycode);
-		dbusmenu_menuitem_property_set (item, DBUSMENU_MENUITEM_PROP_TOGGLE_TYPE, DBUSMENU_MENUITEM_TOGGLE_CHECK);
-		dbusmenu_menuitem_property_set_int(item, DBUSMENU_MENUITEM_PROP_TOGGLE_STATE,
-				selected ? DBUSMENU_MENUITEM_TOGGLE_STATE_CHECKED : DBUSMENU_MENUITEM_TOGGLE_STATE_UNCHECKED);
-		dbusmenu_menuitem_child_append(current_jinstance->menucurrent, item);
+/* establece la etiqueta de menu si cambio, una etiqueta inválida se omite */
+void set_menuitem_label(DbusmenuMenuitem *item, const gchar *label) {
+	if (g_strcmp0(dbusmenu_menuitem_property_get(item, DBUSMENU_MENUITEM_PROP_LABEL), label) != 0) {
+		GVariant *variant = label_variant(label);
+		if (variant != NULL)
+			dbusmenu_menuitem_property_set_variant(item, DBUSMENU_MENUITEM_PROP_LABEL, variant);
 	}
 }
-/* agrega un separador */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenuItemSeparator
-  (JNIEnv *env, jobject that) {
-	if (current_jinstance != NULL) {
-		DbusmenuMenuitem *item = dbusmenu_menuitem_new();
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getNativeBytesInUse
+  (JNIEnv *env, jclass thatclass) {
+	return (jlong)g_atomic_int_get(&native_bytes);
+}
+
+/* tipos de menu del buffer de exportación, ver MenuBuffer.java */
+#define JAYATANA_TYPE_ITEM 0
+#define JAYATANA_TYPE_MENU 1
+#define JAYATANA_TYPE_RADIO 2
+#define JAYATANA_TYPE_CHECK 3
+#define JAYATANA_TYPE_SEPARATOR 4
+#define JAYATANA_FLAG_ENABLED (1 << 0)
+#define JAYATANA_FLAG_SELECTED (1 << 1)
+#define JAYATANA_HEADER_SIZE 18
+
+/* crea un menu del buffer de exportación */
+DbusmenuMenuitem *create_menuitem(JavaInstance *jinstance, jbyte type, jbyte flags, jint id,
+		jint modifiers, jint keycode, const char *label) {
+	DbusmenuMenuitem *item = dbusmenu_menuitem_new();
+	g_object_set_data(G_OBJECT(item), JAYATANA_INSTANCE, jinstance);
+	g_object_set_data(G_OBJECT(item), JAYATANA_TYPE, GINT_TO_POINTER((gint)type));
+	g_atomic_int_inc(&jinstance->liveitems);
+	g_atomic_int_inc(&counters[JAYATANA_COUNTER_MENUITEMS]);
+	if (type == JAYATANA_TYPE_SEPARATOR) {
 		dbusmenu_menuitem_property_set(item, DBUSMENU_MENUITEM_PROP_TYPE, DBUSMENU_CLIENT_TYPES_SEPARATOR);
-		dbusmenu_menuitem_child_append(current_jinstance->menucurrent, item);
+		return item;
+	}
+	set_menuitem_label(item, label);
+	dbusmenu_menuitem_property_set_bool(item, DBUSMENU_MENUITEM_PROP_ENABLED,
+			(flags & JAYATANA_FLAG_ENABLED) == JAYATANA_FLAG_ENABLED);
+	dbusmenu_menuitem_property_set_int(item, JAYATANA_ID, id);
+	g_hash_table_replace(jinstance->items, GINT_TO_POINTER(id), item);
+	if (type == JAYATANA_TYPE_MENU) {
+		// children-display basta para mostrarlo como submenu, los hijos se
+		// publican al abrirse o por exportación anticipada
+		dbusmenu_menuitem_property_set(item, DBUSMENU_MENUITEM_PROP_CHILD_DISPLAY,
+				DBUSMENU_MENUITEM_CHILD_DISPLAY_SUBMENU);
+		g_signal_connect(G_OBJECT(item), DBUSMENU_MENUITEM_SIGNAL_EVENT,
+				G_CALLBACK(item_event), NULL);
+		g_atomic_int_inc(&counters[JAYATANA_COUNTER_HANDLERS]);
+		return item;
+	}
+	g_signal_connect(G_OBJECT(item), DBUSMENU_MENUITEM_SIGNAL_ITEM_ACTIVATED,
+			G_CALLBACK(item_activated), jinstance);
+	g_atomic_int_inc(&counters[JAYATANA_COUNTER_HANDLERS]);
+	if (modifiers > -1 && keycode > -1 && jkeycode_to_xkey(keycode) != NULL)
+		set_menuitem_shortcut(item, modifiers, keycode);
+	if (type == JAYATANA_TYPE_RADIO || type == JAYATANA_TYPE_CHECK) {
+		dbusmenu_menuitem_property_set(item, DBUSMENU_MENUITEM_PROP_TOGGLE_TYPE,
+				type == JAYATANA_TYPE_RADIO ? DBUSMENU_MENUITEM_TOGGLE_RADIO : DBUSMENU_MENUITEM_TOGGLE_CHECK);
+		dbusmenu_menuitem_property_set_int(item, DBUSMENU_MENUITEM_PROP_TOGGLE_STATE,
+				(flags & JAYATANA_FLAG_SELECTED) == JAYATANA_FLAG_SELECTED ?
+				DBUSMENU_MENUITEM_TOGGLE_STATE_CHECKED : DBUSMENU_MENUITEM_TOGGLE_STATE_UNCHECKED);
+	}
+	return item;
+}
+/* propiedades de actualización individual de un menu */
+#define JAYATANA_PROPERTY_LABEL 0
+#define JAYATANA_PROPERTY_ENABLED 1
+#define JAYATANA_PROPERTY_TOGGLE_STATE 2
+#define JAYATANA_PROPERTY_SHORTCUT 3
+/* actualiza una propiedad de un menu */
+void update_menuitem(DbusmenuMenuitem *item, jint property, jint value, jint keycode, const char *label) {
+	switch (property) {
+	case JAYATANA_PROPERTY_LABEL:
+		set_menuitem_label(item, label);
+		break;
+	case JAYATANA_PROPERTY_ENABLED:
+		if (dbusmenu_menuitem_property_get_bool(item, DBUSMENU_MENUITEM_PROP_ENABLED) != (gboolean)value)
+			dbusmenu_menuitem_property_set_bool(item, DBUSMENU_MENUITEM_PROP_ENABLED, (gboolean)value);
+		break;
+	case JAYATANA_PROPERTY_TOGGLE_STATE:
+		if (dbusmenu_menuitem_property_exist(item, DBUSMENU_MENUITEM_PROP_TOGGLE_TYPE)) {
+			gint state = value ? DBUSMENU_MENUITEM_TOGGLE_STATE_CHECKED : DBUSMENU_MENUITEM_TOGGLE_STATE_UNCHECKED;
+			if (dbusmenu_menuitem_property_get_int(item, DBUSMENU_MENUITEM_PROP_TOGGLE_STATE) != state)
+				dbusmenu_menuitem_property_set_int(item, DBUSMENU_MENUITEM_PROP_TOGGLE_STATE, state);
+		}
+		break;
+	case JAYATANA_PROPERTY_SHORTCUT:
+		if (value > -1 && keycode > -1 && jkeycode_to_xkey(keycode) != NULL)
+			set_menuitem_shortcut(item, value, keycode);
+		else
+			dbusmenu_menuitem_property_remove(item, DBUSMENU_MENUITEM_PROP_SHORTCUT);
+		break;
+	}
+}
+
+/* busca un menu hijo reutilizable del mismo tipo */
+DbusmenuMenuitem *find_reusable_menuitem(JavaInstance *jinstance, DbusmenuMenuitem *parent,
+		jbyte type, jint id, GList **separators, GHashTable *kept) {
+	DbusmenuMenuitem *item = NULL;
+	if (type == JAYATANA_TYPE_SEPARATOR) {
+		// los separadores no tienen identificador, se reutilizan en orden
+		if (*separators != NULL) {
+			item = (DbusmenuMenuitem *)(*separators)->data;
+			*separators = g_list_delete_link(*separators, *separators);
+		}
+		return item;
+	}
+	item = find_menuitem(jinstance, id);
+	if (item == NULL || dbusmenu_menuitem_get_parent(item) != parent ||
+			GPOINTER_TO_INT(g_object_get_data(G_OBJECT(item), JAYATANA_TYPE)) != type ||
+			g_hash_table_lookup(kept, item) != NULL)
+		return NULL;
+	return item;
+}
+/* reemplaza los menus hijos por los codificados en el buffer, los menus
+ * existentes con el mismo identificador y tipo se reutilizan y solo se
+ * actualizan las propiedades que cambiaron */
+void replace_menuitems(JavaInstance *jinstance, DbusmenuMenuitem *parent, const char *data, jint length) {
+	GList *children = g_list_copy(dbusmenu_menuitem_get_children(parent));
+	GList *separators = NULL;
+	GList *l;
+	for (l = children; l != NULL; l = l->next)
+		if (!dbusmenu_menuitem_property_exist((DbusmenuMenuitem *)l->data, JAYATANA_ID))
+			separators = g_list_prepend(separators, l->data);
+	separators = g_list_reverse(separators);
+	GHashTable *kept = g_hash_table_new(g_direct_hash, g_direct_equal);
+	guint position = 0;
+	jint offset = 0;
+	while (offset + JAYATANA_HEADER_SIZE <= length) {
+		jbyte type = data[offset];
+		jbyte flags = data[offset + 1];
+		jint id, modifiers, keycode, labellength;
+		memcpy(&id, data + offset + 2, sizeof(jint));
+		memcpy(&modifiers, data + offset + 6, sizeof(jint));
+		memcpy(&keycode, data + offset + 10, sizeof(jint));
+		memcpy(&labellength, data + offset + 14, sizeof(jint));
+		offset += JAYATANA_HEADER_SIZE;
+		if (labellength < 0 || offset + labellength > length)
+			break;
+		const gchar *label = label_buffer_copy(data + offset, labellength);
+		offset += labellength;
+		DbusmenuMenuitem *item = find_reusable_menuitem(jinstance, parent, type, id, &separators, kept);
+		if (item != NULL) {
+			g_atomic_int_inc(&counters[JAYATANA_COUNTER_RECYCLED]);
+			if (type != JAYATANA_TYPE_SEPARATOR) {
+				update_menuitem(item, JAYATANA_PROPERTY_LABEL, 0, -1, label);
+				update_menuitem(item, JAYATANA_PROPERTY_ENABLED,
+						(flags & JAYATANA_FLAG_ENABLED) == JAYATANA_FLAG_ENABLED, -1, NULL);
+				if (type != JAYATANA_TYPE_MENU) {
+					update_menuitem(item, JAYATANA_PROPERTY_SHORTCUT, modifiers, keycode, NULL);
+					update_menuitem(item, JAYATANA_PROPERTY_TOGGLE_STATE,
+							(flags & JAYATANA_FLAG_SELECTED) == JAYATANA_FLAG_SELECTED, -1, NULL);
+				}
+			}
+			if (dbusmenu_menuitem_get_position(item, parent) != position)
+				dbusmenu_menuitem_child_reorder(parent, item, position);
+		} else {
+			item = create_menuitem(jinstance, type, flags, id, modifiers, keycode, label);
+			// el padre mantiene la unica referencia
+			dbusmenu_menuitem_child_add_position(parent, item, position);
+			g_object_unref(G_OBJECT(item));
+		}
+		g_hash_table_insert(kept, item, item);
+		position++;
+	}
+	// eliminar los menus que ya no existen
+	for (l = children; l != NULL; l = l->next) {
+		DbusmenuMenuitem *item = (DbusmenuMenuitem *)l->data;
+		if (g_hash_table_lookup(kept, item) == NULL) {
+			g_object_ref(G_OBJECT(item));
+			dbusmenu_menuitem_child_delete(parent, item);
+			destroy_menuitem(item);
+		}
+	}
+	g_hash_table_destroy(kept);
+	g_list_free(separators);
+	g_list_free(children);
+}
+
+
+/* comandos de modificación de menus */
+#define JAYATANA_COMMAND_REGISTER_WATCHER 0
+#define JAYATANA_COMMAND_UNREGISTER_WATCHER 1
+#define JAYATANA_COMMAND_INSERT_MENU 2
+#define JAYATANA_COMMAND_MOVE_MENU 3
+#define JAYATANA_COMMAND_UPDATE_MENU 4
+#define JAYATANA_COMMAND_REMOVE_MENU 5
+#define JAYATANA_COMMAND_REPLACE_MENUITEMS 6
+#define JAYATANA_COMMAND_UPDATE_MENUITEM 7
+/* comando de modificación, los datos contienen la etiqueta o el buffer de exportación */
+typedef struct {
+	jint type;
+	jlong windowxid;
+	jobject that;
+	jint id;
+	jint position;
+	jint value;
+	jint keycode;
+	jint length;
+	char data[];
+} MenuCommand;
+gint commands_scheduled = 0;
+gboolean commands_draining = FALSE;
+
+/* crea un comando con espacio para los datos */
+MenuCommand *menu_command_new(jint type, jlong windowxid, jint id, jint length) {
+	MenuCommand *command = (MenuCommand *)g_malloc0(sizeof(MenuCommand) + length + 1);
+	g_atomic_int_add(&native_bytes, (gint)(sizeof(MenuCommand) + length + 1));
+	command->type = type;
+	command->windowxid = windowxid;
+	command->id = id;
+	command->length = length;
+	return command;
+}
+/* crea un comando con la etiqueta como datos, la etiqueta llega codificada
+ * en UTF-8 estándar desde java como en el buffer de exportación */
+MenuCommand *menu_command_new_label(JNIEnv *env, jint type, jlong windowxid, jint id, jbyteArray label) {
+	// se copia directamente al comando sin copias intermedias de la JVM
+	jint length = label == NULL ? 0 : (*env)->GetArrayLength(env, label);
+	MenuCommand *command = menu_command_new(type, windowxid, id, length);
+	if (length > 0)
+		(*env)->GetByteArrayRegion(env, label, 0, length, (jbyte *)command->data);
+	command->data[length] = '\0';
+	return command;
+}
+/* libera un comando */
+void menu_command_free(MenuCommand *command) {
+	g_atomic_int_add(&native_bytes, -(gint)(sizeof(MenuCommand) + command->length + 1));
+	g_free(command);
+}
+/* ejecuta un comando, se ejecuta en el hilo de GMainLoop */
+void execute_command(MenuCommand *command) {
+	if (command->type == JAYATANA_COMMAND_REGISTER_WATCHER) {
+		register_watcher(command->windowxid, command->that);
+		return;
+	}
+	JavaInstance *jinstance = lookup_instance(command->windowxid);
+	if (jinstance == NULL)
+		return;
+	if (command->type == JAYATANA_COMMAND_UNREGISTER_WATCHER) {
+		unregister_watcher(jinstance);
+		return;
+	}
+	if (!jinstance->installed)
+		return;
+	DbusmenuMenuitem *item;
+	switch (command->type) {
+	case JAYATANA_COMMAND_INSERT_MENU:
+		item = create_menuitem(jinstance, JAYATANA_TYPE_MENU,
+				command->value ? JAYATANA_FLAG_ENABLED : 0, command->id, -1, -1, command->data);
+		dbusmenu_menuitem_child_add_position(jinstance->menuroot, item, (guint)command->position);
+		g_object_unref(G_OBJECT(item));
+		break;
+	case JAYATANA_COMMAND_MOVE_MENU:
+		item = find_menuitem(jinstance, command->id);
+		if (item != NULL && dbusmenu_menuitem_get_parent(item) == jinstance->menuroot)
+			dbusmenu_menuitem_child_reorder(jinstance->menuroot, item, (guint)command->position);
+		break;
+	case JAYATANA_COMMAND_UPDATE_MENU:
+		item = find_menuitem(jinstance, command->id);
+		if (item != NULL) {
+			update_menuitem(item, JAYATANA_PROPERTY_LABEL, 0, -1, command->data);
+			update_menuitem(item, JAYATANA_PROPERTY_ENABLED, command->value, -1, NULL);
+		}
+		break;
+	case JAYATANA_COMMAND_REMOVE_MENU:
+		item = find_menuitem(jinstance, command->id);
+		if (item != NULL && dbusmenu_menuitem_get_parent(item) == jinstance->menuroot) {
+			g_object_ref(G_OBJECT(item));
+			dbusmenu_menuitem_child_delete(jinstance->menuroot, item);
+			destroy_menuitem(item);
+		}
+		break;
+	case JAYATANA_COMMAND_REPLACE_MENUITEMS:
+		item = find_menuitem(jinstance, command->id);
+		if (item != NULL)
+			replace_menuitems(jinstance, item, command->data, command->length);
+		break;
+	case JAYATANA_COMMAND_UPDATE_MENUITEM:
+		item = find_menuitem(jinstance, command->id);
+		if (item != NULL)
+			update_menuitem(item, command->position, command->value, command->keycode, command->data);
+		break;
 	}
 }
+/* ejecuta en orden todos los comandos pendientes, se ejecuta en el hilo de GMainLoop */
+gboolean drain_commands(gpointer user_data) {
+	if (commands_draining)
+		return FALSE;
+	commands_draining = TRUE;
+	g_atomic_int_set(&commands_scheduled, 0);
+	MenuCommand *command;
+	while ((command = (MenuCommand *)g_async_queue_try_pop(commands)) != NULL) {
+		execute_command(command);
+		menu_command_free(command);
+	}
+	commands_draining = FALSE;
+	return FALSE;
+}
+/* encola un comando, desde el hilo de GMainLoop se aplica de inmediato
+ * junto con los pendientes, de lo contrario se programa un vaciado */
+void push_command(MenuCommand *command) {
+	g_async_queue_push(commands, command);
+	if (g_main_context_is_owner(gmaincontext)) {
+		drain_commands(NULL);
+	} else if (g_atomic_int_compare_and_exchange(&commands_scheduled, 0, 1)) {
+		GSource *source = g_idle_source_new();
+		g_source_set_priority(source, G_PRIORITY_DEFAULT);
+		g_source_set_callback(source, drain_commands, NULL, NULL);
+		g_source_attach(source, gmaincontext);
+		g_source_unref(source);
+	}
+}
+
+
+
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_registerWatcher
+  (JNIEnv *env, jobject that, jlong windowxid) {
+	MenuCommand *command = menu_command_new(JAYATANA_COMMAND_REGISTER_WATCHER, windowxid, 0, 0);
+	command->that = (*env)->NewGlobalRef(env, that);
+	g_atomic_int_inc(&counters[JAYATANA_COUNTER_GLOBALREFS]);
+	push_command(command);
+}
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_unregisterWatcher
+  (JNIEnv *env, jobject that, jlong windowxid) {
+	push_command(menu_command_new(JAYATANA_COMMAND_UNREGISTER_WATCHER, windowxid, 0, 0));
+}
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_replaceMenuItems
+  (JNIEnv *env, jobject that, jlong windowxid, jint id, jobject buffer, jint length) {
+	const char *data = (const char *)(*env)->GetDirectBufferAddress(env, buffer);
+	if (data == NULL || length < 0)
+		return;
+	MenuCommand *command = menu_command_new(JAYATANA_COMMAND_REPLACE_MENUITEMS, windowxid, id, length);
+	memcpy(command->data, data, length);
+	push_command(command);
+}
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setItemLabel
+  (JNIEnv *env, jobject that, jlong windowxid, jint id, jbyteArray label) {
+	MenuCommand *command = menu_command_new_label(env, JAYATANA_COMMAND_UPDATE_MENUITEM, windowxid, id, label);
+	command->position = JAYATANA_PROPERTY_LABEL;
+	push_command(command);
+}
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setItemEnabled
+  (JNIEnv *env, jobject that, jlong windowxid, jint id, jboolean enabled) {
+	MenuCommand *command = menu_command_new(JAYATANA_COMMAND_UPDATE_MENUITEM, windowxid, id, 0);
+	command->position = JAYATANA_PROPERTY_ENABLED;
+	command->value = enabled ? 1 : 0;
+	push_command(command);
+}
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setItemToggleState
+  (JNIEnv *env, jobject that, jlong windowxid, jint id, jboolean selected) {
+	MenuCommand *command = menu_command_new(JAYATANA_COMMAND_UPDATE_MENUITEM, windowxid, id, 0);
+	command->position = JAYATANA_PROPERTY_TOGGLE_STATE;
+	command->value = selected ? 1 : 0;
+	push_command(command);
+}
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setItemShortcut
+  (JNIEnv *env, jobject that, jlong windowxid, jint id, jint modifiers, jint keycode) {
+	MenuCommand *command = menu_command_new(JAYATANA_COMMAND_UPDATE_MENUITEM, windowxid, id, 0);
+	command->position = JAYATANA_PROPERTY_SHORTCUT;
+	command->value = modifiers;
+	command->keycode = keycode;
+	push_command(command);
+}
+/* inserta un menu en la barra */
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_insertMenu
+  (JNIEnv *env, jobject that, jlong windowxid, jint id, jbyteArray label, jboolean enabled, jint position) {
+	MenuCommand *command = menu_command_new_label(env, JAYATANA_COMMAND_INSERT_MENU, windowxid, id, label);
+	command->value = enabled ? 1 : 0;
+	command->position = position;
+	push_command(command);
+}
+/* mueve un menu de la barra */
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_moveMenu
+  (JNIEnv *env, jobject that, jlong windowxid, jint id, jint position) {
+	MenuCommand *command = menu_command_new(JAYATANA_COMMAND_MOVE_MENU, windowxid, id, 0);
+	command->position = position;
+	push_command(command);
+}
+/* actualiza un menu de la barra */
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_updateMenu
+  (JNIEnv *env, jobject that, jlong windowxid, jint id, jbyteArray label, jboolean enabled) {
+	MenuCommand *command = menu_command_new_label(env, JAYATANA_COMMAND_UPDATE_MENU, windowxid, id, label);
+	command->value = enabled ? 1 : 0;
+	push_command(command);
+}
+/* elimina un menu de la barra */
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_removeMenu
+  (JNIEnv *env, jobject that, jlong windowxid, jint id) {
+	push_command(menu_command_new(JAYATANA_COMMAND_REMOVE_MENU, windowxid, id, 0));
+}
@@ -23,14 +23,6 @@ JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_nativeInitialize
 JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_nativeUninitialize
   (JNIEnv *, jclass);
 
-/*
- * Class:     org_java_ayatana_ApplicationMenu
- * Method:    setCurrent
- * Signature: (J)V
- */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setCurrent
-  (JNIEnv *, jobject, jlong);
-
 /*
  * Class:     org_java_ayatana_ApplicationMenu
  * Method:    getWindowXID
@@ -57,51 +49,123 @@ JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_unregisterWatcher
 
 /*
  * Class:     org_java_ayatana_ApplicationMenu
- * Method:    addMenu
- * Signature: (ILjava/lang/String;Z)V
+ * Method:    insertMenu
+ * Signature: (JI[BZI)V
  */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenu
-  (JNIEnv *, jobject, jint, jstring, jboolean);
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_insertMenu
+  (JNIEnv *, jobject, jlong, jint, jbyteArray, jboolean, jint);
 
 /*
  * Class:     org_java_ayatana_ApplicationMenu
- * Method:    removeAll
- * Signature: ()V
+ * Method:    moveMenu
+ * Signature: (JII)V
  */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_removeAll
-  (JNIEnv *, jobject);
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_moveMenu
+  (JNIEnv *, jobject, jlong, jint, jint);
 
 /*
  * Class:     org_java_ayatana_ApplicationMenu
- * Method:    addMenuItem
- * Signature: (ILjava/lang/String;ZII)V
+ * Method:    updateMenu
+ * Signature: (JI[BZ)V
  */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenuItem
-  (JNIEnv *, jobject, jint, jstring, jboolean, jint, jint);
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_updateMenu
+  (JNIEnv *, jobject, jlong, jint, jbyteArray, jboolean);
 
 /*
  * Class:     org_java_ayatana_ApplicationMenu
- * Method:    addMenuItemRadio
- * Signature: (ILjava/lang/String;ZIIZ)V
+ * Method:    removeMenu
+ * Signature: (JI)V
  */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenuItemRadio
-  (JNIEnv *, jobject, jint, jstring, jboolean, jint, jint, jboolean);
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_removeMenu
+  (JNIEnv *, jobject, jlong, jint);
 
 /*
  * Class:     org_java_ayatana_ApplicationMenu
- * Method:    addMenuItemCheck
- * Signature: (ILjava/lang/String;ZIIZ)V
+ * Method:    replaceMenuItems
+ * Signature: (JILjava/nio/ByteBuffer;I)V
  */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenuItemCheck
-  (JNIEnv *, jobject, jint, jstring, jboolean, jint, jint, jboolean);
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_replaceMenuItems
+  (JNIEnv *, jobject, jlong, jint, jobject, jint);
 
 /*
  * Class:     org_java_ayatana_ApplicationMenu
- * Method:    addMenuItemSeparator
- * Signature: ()V
+ * Method:    setItemLabel
+ * Signature: (JI[B)V
+ */
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setItemLabel
+  (JNIEnv *, jobject, jlong, jint, jbyteArray);
+
+/*
+ * Class:     org_java_ayatana_ApplicationMenu
+ * Method:    setItemEnabled
+ * Signature: (JIZ)V
+ */
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setItemEnabled
+  (JNIEnv *, jobject, jlong, jint, jboolean);
+
+/*
+ * Class:     org_java_ayatana_ApplicationMenu
+ * Method:    setItemToggleState
+ * Signature: (JIZ)V
+ */
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setItemToggleState
+  (JNIEnv *, jobject, jlong, jint, jboolean);
+
+/*
+ * Class:     org_java_ayatana_ApplicationMenu
+ * Method:    setItemShortcut
+ * Signature: (JIII)V
+ */
+JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_setItemShortcut
+  (JNIEnv *, jobject, jlong, jint, jint, jint);
+
+/*
+ * Class:     org_java_ayatana_ApplicationMenu
+ * Method:    getUpcallCount
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getUpcallCount
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_java_ayatana_ApplicationMenu
+ * Method:    getUpcallTime
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getUpcallTime
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_java_ayatana_ApplicationMenu
+ * Method:    getUpcallMaxTime
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getUpcallMaxTime
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_java_ayatana_ApplicationMenu
+ * Method:    getNativeBytesInUse
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getNativeBytesInUse
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     org_java_ayatana_ApplicationMenu
+ * Method:    getLiveMenuItems
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_org_java_ayatana_ApplicationMenu_getLiveMenuItems
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     org_java_ayatana_ApplicationMenu
+ * Method:    getNativeCounter
+ * Signature: (I)J
  */
-JNIEXPORT void JNICALL Java_org_java_ayatana_ApplicationMenu_addMenuItemSeparator
-  (JNIEnv *, jobject);
+JNIEXPORT jlong JNICALL Java_org_java_ayatana_ApplicationMenu_getNativeCounter
+  (JNIEnv *, jclass, jint);
 
 #ifdef __cplusplus
 }
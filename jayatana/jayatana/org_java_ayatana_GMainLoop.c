@@ -30,15 +30,107 @@
 #include "org_java_ayatana_GMainLoop.h"
 
 #include <pthread.h>
+#include <string.h>
 #include <glib.h>
 #include <gio/gio.h>
 #include <X11/Xlib.h>
+#include "ayatana_JVM.h"
+#include "ayatana_GMainContext.h"
 
+GMainContext *gmaincontext;
 GMainLoop *loop;
+GThread *thread;
+/* fin del hilo de GMainLoop, permite esperarlo con tiempo límite */
+GMutex finished_mutex;
+GCond finished_cond;
+gboolean finished = FALSE;
 
-void *g_main_loop_thread( void *ptr ) {
-	loop = g_main_loop_new(NULL, FALSE);
+/* histograma del tiempo de despacho por iteración, la casilla i cuenta las
+ * iteraciones que tardaron menos de 2^(i+1) microsegundos, la ultima el resto */
+#define JAYATANA_HISTOGRAM_SIZE 24
+volatile gint dispatch_histogram[JAYATANA_HISTOGRAM_SIZE];
+gint64 poll_returned = 0;
+
+/* descriptores del contexto global agregados a la espera, solo se usan en
+ * el hilo de GMainLoop */
+GPollFD *default_fds = NULL;
+gint default_fds_size = 0;
+GPollFD *poll_fds = NULL;
+gint poll_fds_size = 0;
+
+/* espera sobre los descriptores del contexto privado y del contexto global.
+ * libdbusmenu programa con g_idle_add, siempre en el contexto global, la
+ * publicación de LayoutUpdated e ItemsPropertiesUpdated, y en un proceso
+ * Swing nadie más atiende ese contexto. Si otro hilo ya es dueño del
+ * contexto global no se toca; si no, se agregan sus descriptores (incluido
+ * el de despertar de g_idle_add desde otros hilos) y se despacha una sola
+ * iteración por espera, así sus fuentes no retienen el contexto privado */
+gint jayatana_poll_default(GPollFD *fds, guint nfds, gint timeout) {
+	GMainContext *context = g_main_context_default();
+	if (!g_main_context_acquire(context))
+		return g_poll(fds, nfds, timeout);
+	gint max_priority;
+	if (g_main_context_prepare(context, &max_priority))
+		timeout = 0;
+	gint default_timeout;
+	gint ndefault;
+	while ((ndefault = g_main_context_query(context, max_priority, &default_timeout,
+			default_fds, default_fds_size)) > default_fds_size) {
+		default_fds_size = ndefault;
+		default_fds = g_renew(GPollFD, default_fds, default_fds_size);
+	}
+	if (default_timeout >= 0 && (timeout < 0 || default_timeout < timeout))
+		timeout = default_timeout;
+	if ((gint)nfds + ndefault > poll_fds_size) {
+		poll_fds_size = (gint)nfds + ndefault;
+		poll_fds = g_renew(GPollFD, poll_fds, poll_fds_size);
+	}
+	memcpy(poll_fds, fds, nfds * sizeof(GPollFD));
+	memcpy(poll_fds + nfds, default_fds, ndefault * sizeof(GPollFD));
+	gint result = g_poll(poll_fds, nfds + ndefault, timeout);
+	memcpy(fds, poll_fds, nfds * sizeof(GPollFD));
+	memcpy(default_fds, poll_fds + nfds, ndefault * sizeof(GPollFD));
+	if (g_main_context_check(context, max_priority, default_fds, ndefault))
+		g_main_context_dispatch(context);
+	g_main_context_release(context);
+	return result;
+}
+/* función de espera del contexto privado, mide el tiempo de despacho
+ * transcurrido desde la espera anterior */
+gint jayatana_poll_func(GPollFD *fds, guint nfds, gint timeout) {
+	if (poll_returned > 0) {
+		gint64 elapsed = g_get_monotonic_time() - poll_returned;
+		gint bucket = 0;
+		while (elapsed > 1 && bucket < JAYATANA_HISTOGRAM_SIZE - 1) {
+			elapsed >>= 1;
+			bucket++;
+		}
+		g_atomic_int_inc(&dispatch_histogram[bucket]);
+	}
+	gint result = jayatana_poll_default(fds, nfds, timeout);
+	poll_returned = g_get_monotonic_time();
+	return result;
+}
+
+void *jayatana_loop_thread( void *ptr ) {
+	// el hilo se adjunta una sola vez para todas las invocaciones a java
+	JNIEnv *env = NULL;
+	JavaVMAttachArgs args;
+	args.version = JNI_VERSION_1_6;
+	args.name = "jayatana-gmainloop";
+	args.group = NULL;
+	(*jvm)->AttachCurrentThreadAsDaemon(jvm, (void**)&env, &args);
+	// el contexto privado es el predeterminado del hilo antes de crear
+	// observadores, proxies y servidores de menus, sus fuentes se asocian a el
+	g_main_context_push_thread_default(gmaincontext);
+	loop = g_main_loop_new(gmaincontext, FALSE);
 	g_main_loop_run(loop);
+	g_main_context_pop_thread_default(gmaincontext);
+	(*jvm)->DetachCurrentThread(jvm);
+	g_mutex_lock(&finished_mutex);
+	finished = TRUE;
+	g_cond_broadcast(&finished_cond);
+	g_mutex_unlock(&finished_mutex);
 	return NULL;
 }
 
@@ -47,10 +139,55 @@ JNIEXPORT void JNICALL Java_org_java_ayatana_GMainLoop_runGMainLoop
 	g_type_init();
 	g_thread_init(NULL);
 	XInitThreads();
-	g_thread_create(g_main_loop_thread, NULL, TRUE, NULL);
+	// el contexto existe antes del hilo para poder encolar comandos
+	gmaincontext = g_main_context_new();
+	g_main_context_set_poll_func(gmaincontext, jayatana_poll_func);
+	g_mutex_init(&finished_mutex);
+	g_cond_init(&finished_cond);
+	thread = g_thread_create(jayatana_loop_thread, NULL, TRUE, NULL);
 }
 
+/* termina el GMainLoop, se ejecuta en el hilo de GMainLoop después de las
+ * fuentes pendientes de mayor prioridad */
+gboolean jayatana_quit_idle(gpointer user_data) {
+	if (loop != NULL)
+		g_main_loop_quit(loop);
+	return FALSE;
+}
 JNIEXPORT void JNICALL Java_org_java_ayatana_GMainLoop_quitGMainLoop
   (JNIEnv *env, jclass thatclass) {
-	g_main_loop_quit(loop);
+	// los comandos y eventos pendientes se atienden antes de terminar
+	GSource *source = g_idle_source_new();
+	g_source_set_priority(source, G_PRIORITY_LOW);
+	g_source_set_callback(source, jayatana_quit_idle, NULL, NULL);
+	g_source_attach(source, gmaincontext);
+	g_source_unref(source);
+}
+
+JNIEXPORT jboolean JNICALL Java_org_java_ayatana_GMainLoop_joinGMainLoop
+  (JNIEnv *env, jclass thatclass, jlong timeout) {
+	gint64 deadline = g_get_monotonic_time() + timeout * G_TIME_SPAN_MILLISECOND;
+	g_mutex_lock(&finished_mutex);
+	while (!finished)
+		if (!g_cond_wait_until(&finished_cond, &finished_mutex, deadline))
+			break;
+	gboolean result = finished;
+	g_mutex_unlock(&finished_mutex);
+	if (result && thread != NULL) {
+		g_thread_join(thread);
+		thread = NULL;
+	}
+	return result ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jlongArray JNICALL Java_org_java_ayatana_GMainLoop_getDispatchHistogram
+  (JNIEnv *env, jclass thatclass) {
+	jlong values[JAYATANA_HISTOGRAM_SIZE];
+	gint i;
+	for (i = 0; i < JAYATANA_HISTOGRAM_SIZE; i++)
+		values[i] = (jlong)g_atomic_int_get(&dispatch_histogram[i]);
+	jlongArray histogram = (*env)->NewLongArray(env, JAYATANA_HISTOGRAM_SIZE);
+	if (histogram != NULL)
+		(*env)->SetLongArrayRegion(env, histogram, 0, JAYATANA_HISTOGRAM_SIZE, values);
+	return histogram;
 }
@@ -23,6 +23,22 @@ JNIEXPORT void JNICALL Java_org_java_ayatana_GMainLoop_runGMainLoop
 JNIEXPORT void JNICALL Java_org_java_ayatana_GMainLoop_quitGMainLoop
   (JNIEnv *, jclass);
 
+/*
+ * Class:     org_java_ayatana_GMainLoop
+ * Method:    joinGMainLoop
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_java_ayatana_GMainLoop_joinGMainLoop
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     org_java_ayatana_GMainLoop
+ * Method:    getDispatchHistogram
+ * Signature: ()[J
+ */
+JNIEXPORT jlongArray JNICALL Java_org_java_ayatana_GMainLoop_getDispatchHistogram
+  (JNIEnv *, jclass);
+
 #ifdef __cplusplus
 }
 #endif
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.event.ContainerEvent;
+import java.awt.event.ContainerListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.KeyStroke;
+
+/**
+ * Tabla de aceleradores de la barra de menus, resuelve un acelerador con
+ * una sola busqueda. La tabla se reconstruye solo cuando cambia la estructura
+ * de los menus y se actualiza con los eventos de cambio de acelerador.
+ * 
+ * Solo debe usarse desde el hilo de eventos de AWT.
+ */
+final class AcceleratorTable implements ContainerListener, PropertyChangeListener {
+	private final JMenuBar menubar;
+	private final Map<KeyStroke, WeakReference<JMenuItem>> accelerators =
+			new HashMap<KeyStroke, WeakReference<JMenuItem>>();
+	private final List<Container> containers = new ArrayList<Container>();
+	private final List<JMenuItem> menuitems = new ArrayList<JMenuItem>();
+	private boolean dirty = true;
+
+	/**
+	 * Crea la tabla de aceleradores de la barra de menus
+	 * 
+	 * @param menubar barra de menus
+	 */
+	public AcceleratorTable(JMenuBar menubar) {
+		this.menubar = menubar;
+	}
+
+	/**
+	 * Obtiene la llave de la tabla
+	 * 
+	 * @param keycode codigo de teclado
+	 * @param modifiers modificador
+	 * @return llave
+	 */
+	private static KeyStroke getKey(int keycode, int modifiers) {
+		return KeyStroke.getKeyStroke(keycode, modifiers);
+	}
+
+	/**
+	 * Obtener un menu del acelerador
+	 * 
+	 * @param keycode codigo de teclado
+	 * @param modifiers modificador
+	 * @return menu o <code>null</code> si ningun menu tiene el acelerador
+	 */
+	public JMenuItem get(int keycode, int modifiers) {
+		if (dirty)
+			rebuild();
+		WeakReference<JMenuItem> reference = accelerators.get(getKey(keycode, modifiers));
+		if (reference == null)
+			return null;
+		return reference.get();
+	}
+
+	/**
+	 * Elimina los observadores de los menus
+	 */
+	public void dispose() {
+		clear();
+		dirty = true;
+	}
+
+	/**
+	 * Reconstruye la tabla recorriendo la barra de menus
+	 */
+	private void rebuild() {
+		clear();
+		listen(menubar);
+		for (Component comp : menubar.getComponents())
+			if (comp instanceof JMenuItem)
+				add((JMenuItem)comp);
+		dirty = false;
+	}
+	/**
+	 * Agrega un menu y sus hijos a la tabla
+	 * 
+	 * @param menuitem menu
+	 */
+	private void add(JMenuItem menuitem) {
+		if (menuitem instanceof JMenu) {
+			JMenu menu = (JMenu)menuitem;
+			listen(menu.getPopupMenu());
+			for (Component comp : menu.getPopupMenu().getComponents())
+				if (comp instanceof JMenuItem)
+					add((JMenuItem)comp);
+		} else {
+			menuitem.addPropertyChangeListener("accelerator", this);
+			menuitems.add(menuitem);
+			put(menuitem.getAccelerator(), menuitem);
+		}
+	}
+	/**
+	 * Registra el acelerador, el primer menu encontrado tiene prioridad
+	 * 
+	 * @param accelerator acelerador
+	 * @param menuitem menu
+	 */
+	private void put(KeyStroke accelerator, JMenuItem menuitem) {
+		if (accelerator == null)
+			return;
+		KeyStroke key = getKey(accelerator.getKeyCode(), accelerator.getModifiers());
+		WeakReference<JMenuItem> reference = accelerators.get(key);
+		if (reference == null || reference.get() == null)
+			accelerators.put(key, new WeakReference<JMenuItem>(menuitem));
+	}
+	/**
+	 * Observa los cambios de estructura del contenedor
+	 * 
+	 * @param container contenedor
+	 */
+	private void listen(Container container) {
+		container.addContainerListener(this);
+		containers.add(container);
+	}
+	/**
+	 * Limpia la tabla y los observadores
+	 */
+	private void clear() {
+		for (Container container : containers)
+			container.removeContainerListener(this);
+		for (JMenuItem menuitem : menuitems)
+			menuitem.removePropertyChangeListener("accelerator", this);
+		containers.clear();
+		menuitems.clear();
+		accelerators.clear();
+	}
+
+	@Override
+	public void propertyChange(PropertyChangeEvent evt) {
+		if (dirty)
+			return;
+		KeyStroke oldValue = (KeyStroke)evt.getOldValue();
+		if (oldValue != null) {
+			// otro menu puede tener el mismo acelerador
+			dirty = true;
+		} else {
+			put((KeyStroke)evt.getNewValue(), (JMenuItem)evt.getSource());
+		}
+	}
+	@Override
+	public void componentAdded(ContainerEvent e) {
+		dirty = true;
+	}
+	@Override
+	public void componentRemoved(ContainerEvent e) {
+		dirty = true;
+	}
+}
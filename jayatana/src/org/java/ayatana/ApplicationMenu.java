@@ -30,9 +30,20 @@ import java.awt.*;
 import java.awt.event.*;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*;
@@ -90,9 +101,39 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 			return null;
 	}
 	/**
-	 * Lista de ventanas cargadas
+	 * Ventanas cargadas, las entradas se eliminan al recolectarse la ventana.
+	 * El valor es débil ya que la instancia mantiene la ventana.
 	 */
-	private final static List<Window> windows = new ArrayList<Window>();
+	private final static Map<Window, WeakReference<ApplicationMenu>> windows =
+			new WeakHashMap<Window, WeakReference<ApplicationMenu>>();
+	/**
+	 * Obtiene las instancias de las ventanas cargadas
+	 * 
+	 * @return instancias
+	 */
+	static List<ApplicationMenu> getInstances() {
+		List<ApplicationMenu> instances = new ArrayList<ApplicationMenu>();
+		synchronized (windows) {
+			for (WeakReference<ApplicationMenu> reference : windows.values()) {
+				ApplicationMenu instance = reference.get();
+				if (instance != null)
+					instances.add(instance);
+			}
+		}
+		return instances;
+	}
+	/**
+	 * Indica si la ventana ya tiene instalado el menu de aplicaciones globales
+	 * 
+	 * @param window ventana
+	 * @return <code>True</code> si ya esta instalado
+	 */
+	private static boolean isRegistered(Window window) {
+		synchronized (windows) {
+			WeakReference<ApplicationMenu> reference = windows.get(window);
+			return reference != null && reference.get() != null;
+		}
+	}
 	/**
 	 * Trata de instalar el menu de aplicaciones globales, si no es posible
 	 * por incompatibilidad del sistema operativo o esta des habilitado el
@@ -147,12 +188,17 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 			throw new NullPointerException();
 		if (menubar == null)
 			return false;
-		if (windows.contains(window))
+		if (isRegistered(window))
 			return false;
 		if (!"libappmenu.so".equals(System.getenv("UBUNTU_MENUPROXY")))
 			return false;
 		if (AyatanaLibrary.load()) {
-			new ApplicationMenu(window, menubar, additionalMenuAction);
+			synchronized (windows) {
+				if (isRegistered(window))
+					return false;
+				windows.put(window, new WeakReference<ApplicationMenu>(
+						new ApplicationMenu(window, menubar, additionalMenuAction)));
+			}
 			return true;
 		} else {
 			return false;
@@ -166,12 +212,48 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 	 */
 	private static native void nativeInitialize();
 	/**
-	 * Deteiene el proceso de GMainLoop y destruye las estrucutras de
-	 * control de ventanas
+	 * Destruye las estrucutras de control de ventanas, solo debe invocarse
+	 * después de detener el GMainLoop
 	 */
 	private static native void nativeUninitialize();
+	/**
+	 * Cantidad de invocaciones desde el hilo de GMainLoop a java
+	 * 
+	 * @return invocaciones
+	 */
+	static native long getUpcallCount();
+	/**
+	 * Tiempo acumulado de las invocaciones desde el hilo de GMainLoop a java,
+	 * incluye la obtención del entorno java
+	 * 
+	 * @return tiempo en microsegundos
+	 */
+	static native long getUpcallTime();
+	/**
+	 * Tiempo máximo de una invocación desde el hilo de GMainLoop a java
+	 * 
+	 * @return tiempo en microsegundos
+	 */
+	static native long getUpcallMaxTime();
+	/**
+	 * Bytes nativos en uso por comandos pendientes y etiquetas compartidas
+	 * 
+	 * @return bytes en uso
+	 */
+	static native long getNativeBytesInUse();
+	/**
+	 * Obtiene un contador de recursos nativos
+	 * 
+	 * @param counter contador, ver <code>AyatanaManagement</code>
+	 * @return valor del contador
+	 */
+	static native long getNativeCounter(int counter);
 	
 	private static boolean initialized = false;
+	/**
+	 * Tiempo máximo de espera para detener el GMainLoop al terminar la JVM
+	 */
+	private static final long shutdownTimeout = Long.getLong("jayatana.shutdown.timeout", 1000);
 	
 	/**
 	 * Inicializa el ApplicationMenu para iniciar con la integración con Ayatana
@@ -179,14 +261,22 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 	 */
 	private synchronized static void initialize() {
 		if (!initialized) {
-			GMainLoop.run();
+			GMainLoop.start();
 			ApplicationMenu.nativeInitialize();
-			Runtime.getRuntime().addShutdownHook(new Thread() {
+			AyatanaManagement.register();
+			Thread shutdown = new Thread("jayatana-shutdown") {
 				@Override
 				public void run() {
-					ApplicationMenu.nativeUninitialize();
+					// las estructuras nativas solo se destruyen cuando el
+					// GMainLoop ya no atiende eventos
+					if (GMainLoop.shutdown(shutdownTimeout))
+						ApplicationMenu.nativeUninitialize();
+					else
+						Logger.getLogger(ApplicationMenu.class.getName()).log(Level.WARNING,
+								"GMainLoop did not stop within {0} ms", shutdownTimeout);
 				}
-			});
+			};
+			Runtime.getRuntime().addShutdownHook(shutdown);
 			initialized = true;
 		}
 	}
@@ -194,11 +284,28 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 	private Window window;
 	private JMenuBar menubar;
 	private boolean tryInstalled = false;
+	private boolean installed = false;
 	private ExtraMenuAction extraMenuAction;
-	private long windowxid = -1;
+	private volatile long windowxid = -1;
 	private boolean allowDynamicMenuBar;
+	private final MenuItemRegistry registry = new MenuItemRegistry();
+	private final AcceleratorTable accelerators;
+	private final Queue<MenuBuffer> menuBuffers = new ConcurrentLinkedQueue<MenuBuffer>();
+	private final List<ExportedMenu> exportedMenus = new ArrayList<ExportedMenu>();
+	private final MenuShowTracker shows = new MenuShowTracker();
+	private final MenuEventRing.Target events = new MenuEventRing.Target() {
+		@Override
+		public void handleMenuEvent(int type, int id, long token) {
+			ApplicationMenu.this.handleMenuEvent(type, id, token);
+		}
+	};
+	private final SubmenuCache submenuCache = new SubmenuCache(new SubmenuCache.ItemUpdater() {
+		@Override
+		public void updateItem(JMenuItem menuitem, String property) {
+			updateMenuItem(menuitem, property);
+		}
+	});
 	
-	native private void setCurrent(long windowxid);
 	/**
 	 * Obtiene el identificador de ventana del sistema ventanas X11
 	 * 
@@ -220,115 +327,188 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 	native private void unregisterWatcher(long windowxid);
 	
 	/**
-	 * Crea un menu en el menu de aplicaciones globales
+	 * Inserta un menu de la barra en el menu de aplicaciones globales
 	 * 
-	 * @param menu menu
+	 * @param windowxid identificador de ventana
+	 * @param id identificador de menu
+	 * @param label texto de menu en UTF-8
+	 * @param enabled habilitado
+	 * @param position posición en la barra
 	 */
-	private void addMenu(JMenu menu) {
-		if (menu.getText() == null || "".equals(menu.getText()))
-			return;
-		addMenu(menu.hashCode(), menu.getText(), menu.isEnabled());
-	}
+	native private void insertMenu(long windowxid, int id, byte[] label, boolean enabled, int position);
 	/**
-	 * Crear un menu en el menu de aplicaciones globales
+	 * Mueve un menu de la barra del menu de aplicaciones globales
 	 * 
 	 * @param windowxid identificador de ventana
-	 * @param hashcode identificador de menu
-	 * @param label texto de menu
+	 * @param id identificador de menu
+	 * @param position nueva posición en la barra
 	 */
-	native private void addMenu(int hashcode, String label, boolean enabled);
-	
+	native private void moveMenu(long windowxid, int id, int position);
 	/**
-	 * Elimina un menu del menu de aplicaciones globales
+	 * Actualiza un menu de la barra del menu de aplicaciones globales
 	 * 
-	 * @param menu menu
+	 * @param windowxid identificador de ventana
+	 * @param id identificador de menu
+	 * @param label texto de menu en UTF-8
+	 * @param enabled habilitado
 	 */
-	private synchronized void removeAllMenus() {
-		removeAll();
-	}
+	native private void updateMenu(long windowxid, int id, byte[] label, boolean enabled);
 	/**
-	 * Elimina un menu del menu de aplicaciones globales
+	 * Elimina un menu de la barra del menu de aplicaciones globales
 	 * 
 	 * @param windowxid identificador de ventana
-	 * @param hashcode identificador de menu
+	 * @param id identificador de menu
 	 */
-	native private void removeAll();
+	native private void removeMenu(long windowxid, int id);
 	/**
-	 * Crea un menu en el menu de aplicaciones globales
+	 * Agrega un menu al buffer de exportación
 	 * 
+	 * @param buffer buffer de menus
 	 * @param menuitem menu
+	 * @return <code>False</code> si el menu no tiene etiqueta y no se agregó
 	 */
-	private void addMenuItem(JMenuItem menuitem) {
+	private boolean addMenuItem(MenuBuffer buffer, JMenuItem menuitem) {
 		if (menuitem.getText() == null || "".equals(menuitem.getText()))
-			return;
+			return false;
 		int modifiers = -1;
 		int keycode = -1;
 		if (menuitem.getAccelerator() != null) {
 			modifiers = menuitem.getAccelerator().getModifiers();
 			keycode = menuitem.getAccelerator().getKeyCode();
 		}
-		if (menuitem instanceof JMenu) {
-			addMenu((JMenu)menuitem);
-		} else if (menuitem instanceof JRadioButtonMenuItem) {
-			addMenuItemRadio(menuitem.hashCode(),
-					menuitem.getText(), menuitem.isEnabled(), modifiers, keycode,
-					menuitem.isSelected());
-		} else if (menuitem instanceof JCheckBoxMenuItem) {
-			addMenuItemCheck(menuitem.hashCode(),
-					menuitem.getText(), menuitem.isEnabled(), modifiers, keycode,
-					menuitem.isSelected());
-		} else {
-			addMenuItem(menuitem.hashCode(),
-					menuitem.getText(), menuitem.isEnabled(), modifiers, keycode);
-		}
+		byte type;
+		if (menuitem instanceof JMenu)
+			type = MenuBuffer.TYPE_MENU;
+		else if (menuitem instanceof JRadioButtonMenuItem)
+			type = MenuBuffer.TYPE_RADIO;
+		else if (menuitem instanceof JCheckBoxMenuItem)
+			type = MenuBuffer.TYPE_CHECK;
+		else
+			type = MenuBuffer.TYPE_ITEM;
+		buffer.add(type, registry.register(menuitem), menuitem.getText(), menuitem.isEnabled(),
+				type != MenuBuffer.TYPE_MENU && menuitem.isSelected(), modifiers, keycode);
+		return true;
 	}
 	/**
-	 * Agrega un menu basico
+	 * Reemplaza los hijos de un submenu con los menus del buffer en una sola
+	 * invocación. Si se invoca desde el hilo de GMainLoop se aplica de
+	 * inmediato, de lo contrario se publica en el GMainLoop.
 	 * 
 	 * @param windowxid identificador de ventana
-	 * @param hashcode identificador de menu
-	 * @param label etiqueta
-	 * @param enabled habilitado
-	 * @param modifiers modificador de accelerador
-	 * @param keycode codigo de accelerador
+	 * @param id identificador del submenu
+	 * @param buffer buffer directo con los menus codificados
+	 * @param length cantidad de bytes del buffer
+	 */
+	native private void replaceMenuItems(long windowxid, int id, ByteBuffer buffer, int length);
+	/**
+	 * Cantidad de menus vivos exportados por la ventana
+	 * 
+	 * @param windowxid identificador de ventana
+	 * @return cantidad de menus o <code>-1</code> si la ventana no está registrada
+	 */
+	native private int getLiveMenuItems(long windowxid);
+	/**
+	 * Cantidad de menus vivos exportados por la ventana
+	 * 
+	 * @return cantidad de menus o <code>-1</code> si la ventana no está registrada
+	 */
+	int getLiveMenuItemCount() {
+		return windowxid > -1 ? getLiveMenuItems(windowxid) : -1;
+	}
+	/**
+	 * Obtiene el identificador de ventana del sistema ventanas X11
+	 * 
+	 * @return identificador de ventana o <code>-1</code> si no se ha instalado
+	 */
+	long getWindowXID() {
+		return windowxid;
+	}
+	/**
+	 * Obtiene el cache de submenus exportados
+	 * 
+	 * @return cache de submenus
 	 */
-	native private void addMenuItem(int hashcode, String label, boolean enabled, int modifiers, int keycode);
+	SubmenuCache getSubmenuCache() {
+		return submenuCache;
+	}
 	/**
-	 * Agrega un menu RADIO
+	 * Actualiza la etiqueta de un menu exportado
 	 * 
 	 * @param windowxid identificador de ventana
-	 * @param hashcode identificador de menu
-	 * @param label etiqueta
+	 * @param id identificador de menu
+	 * @param label texto de menu en UTF-8
+	 */
+	native private void setItemLabel(long windowxid, int id, byte[] label);
+	/**
+	 * Actualiza el estado habilitado de un menu exportado
+	 * 
+	 * @param windowxid identificador de ventana
+	 * @param id identificador de menu
 	 * @param enabled habilitado
-	 * @param modifiers modificador de acelerador
-	 * @param keycode codigo de accelerador
+	 */
+	native private void setItemEnabled(long windowxid, int id, boolean enabled);
+	/**
+	 * Actualiza el estado de selección de un menu exportado de tipo
+	 * radio o casilla
+	 * 
+	 * @param windowxid identificador de ventana
+	 * @param id identificador de menu
 	 * @param selected estado de selección
 	 */
-	native private void addMenuItemRadio(int hashcode, String label, boolean enabled, int modifiers, int keycode, boolean selected);
+	native private void setItemToggleState(long windowxid, int id, boolean selected);
 	/**
-	 * Agrega un menu CHECK
+	 * Actualiza el acelerador de un menu exportado, con valores negativos
+	 * se elimina el acelerador
 	 * 
 	 * @param windowxid identificador de ventana
-	 * @param hashcode identificador de menu
-	 * @param label etiqueta
-	 * @param enabled habilitado
+	 * @param id identificador de menu
 	 * @param modifiers modificador de acelerador
 	 * @param keycode codigo de accelerador
-	 * @param selected estado de selección
 	 */
-	native private void addMenuItemCheck(int hashcode, String label, boolean enabled, int modifiers, int keycode, boolean selected);
+	native private void setItemShortcut(long windowxid, int id, int modifiers, int keycode);
+	/**
+	 * Propaga el cambio de una propiedad de un menu exportado con una sola
+	 * actualización nativa
+	 * 
+	 * @param menuitem menu
+	 * @param property nombre de propiedad
+	 */
+	private void updateMenuItem(JMenuItem menuitem, String property) {
+		int id = registry.register(menuitem);
+		if ("text".equals(property)) {
+			setItemLabel(windowxid, id, MenuBuffer.encodeLabel(menuitem.getText()));
+		} else if ("enabled".equals(property)) {
+			setItemEnabled(windowxid, id, menuitem.isEnabled());
+		} else if ("selected".equals(property)) {
+			setItemToggleState(windowxid, id, menuitem.isSelected());
+		} else if ("accelerator".equals(property)) {
+			KeyStroke accelerator = menuitem.getAccelerator();
+			if (accelerator == null)
+				setItemShortcut(windowxid, id, -1, -1);
+			else
+				setItemShortcut(windowxid, id, accelerator.getModifiers(), accelerator.getKeyCode());
+		}
+	}
 	/**
-	 * Agrega un separador
+	 * Obtiene un buffer de exportación libre
+	 * 
+	 * @return buffer de menus
 	 */
-	private void addSeparator() {
-		addMenuItemSeparator();
+	private MenuBuffer obtainMenuBuffer() {
+		MenuBuffer buffer = menuBuffers.poll();
+		if (buffer == null)
+			buffer = new MenuBuffer();
+		buffer.clear();
+		return buffer;
 	}
 	/**
-	 * Agrega un separador
+	 * Libera un buffer de exportación para reutilizarlo
 	 * 
-	 * @param windowxid identificador de ventana
+	 * @param buffer buffer de menus
 	 */
-	native private void addMenuItemSeparator();
+	private void releaseMenuBuffer(MenuBuffer buffer) {
+		menuBuffers.offer(buffer);
+	}
 	
 	/**
 	 * Contructor de integración de Application Menu
@@ -337,9 +517,9 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 	 * @param menubar 
 	 */
 	private ApplicationMenu(Window window, JMenuBar menubar, ExtraMenuAction additionalMenuAction) {
-		windows.add(window);
 		this.window = window;
 		this.menubar = menubar;
+		accelerators = new AcceleratorTable(menubar);
 		extraMenuAction = additionalMenuAction;
 		allowDynamicMenuBar = extraMenuAction.allowDynamicMenuBar();
 		window.addWindowListener(this);
@@ -351,10 +531,8 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 	 * Tratar de instalar el applicationmenu, ya que depende que
 	 * este el servicio de applicationmenu
 	 */
-	private synchronized void tryInstall() {
-		if (tryInstalled && windowxid > -1) {
-			setCurrent(windowxid);
-		} else if (!tryInstalled) {
+	private void tryInstall() {
+		if (!tryInstalled) {
 			EventQueue.invokeLater(new Runnable() {
 				@Override
 				public void run() {
@@ -370,14 +548,19 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 	 * Tratar de desinstalar el applicationmenu, ya que depende que
 	 * este el servicio de applicationmenu
 	 */
-	private synchronized void tryUninstall() {
+	private void tryUninstall() {
 		if (tryInstalled) {
 			EventQueue.invokeLater(new Runnable() {
 				@Override
 				public void run() {
 					unregisterWatcher(windowxid);
+					RebuildScheduler.getInstance().cancel(ApplicationMenu.this);
 					window.removeWindowListener(ApplicationMenu.this);
-					windows.remove(window);
+					synchronized (windows) {
+						WeakReference<ApplicationMenu> reference = windows.get(window);
+						if (reference != null && reference.get() == ApplicationMenu.this)
+							windows.remove(window);
+					}
 				}
 			});
 			tryInstalled = false;
@@ -385,157 +568,294 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 	}
 	
 	/**
-	 * Construcción de los menus de la barra de menus.
+	 * Menu de la barra tal como fue exportado al menu de aplicaciones globales
 	 */
-	private synchronized void buildMenuBar() {
-		buildMenuBar(false);
+	private static class ExportedMenu {
+		private final int id;
+		private String label;
+		private boolean enabled;
+		
+		public ExportedMenu(int id, String label, boolean enabled) {
+			this.id = id;
+			this.label = label;
+			this.enabled = enabled;
+		}
 	}
+	
 	/**
 	 * Construcción de los menus de la barra de menus.
 	 * @param first si es la primea invocación
 	 */
-	private synchronized void buildMenuBar(boolean first) {
-		for (Component comp : menubar.getComponents())
-			if (comp instanceof JMenu) {
-				if (comp.isVisible())
-					addMenu((JMenu)comp);
-				if (first && allowDynamicMenuBar) {
+	private void buildMenuBar(boolean first) {
+		if (first && allowDynamicMenuBar) {
+			for (Component comp : menubar.getComponents())
+				if (comp instanceof JMenu) {
 					((JMenu)comp).addComponentListener(this);
 					((JMenu)comp).addPropertyChangeListener(this);
 				}
+		}
+		syncMenuBar();
+	}
+	/**
+	 * Sincroniza los menus de la barra con el menu de aplicaciones globales,
+	 * solo se envian las inserciones, eliminaciones, movimientos y cambios
+	 * respecto a los menus exportados anteriormente. Se ejecuta en el hilo
+	 * de eventos de AWT.
+	 */
+	private void syncMenuBar() {
+		List<JMenu> invalidMenus = new ArrayList<JMenu>();
+		List<ExportedMenu> currentMenus = new ArrayList<ExportedMenu>();
+		Set<Integer> currentIds = new HashSet<Integer>();
+		for (Component comp : menubar.getComponents())
+			if (comp instanceof JMenu && comp.isVisible()) {
+				JMenu menu = (JMenu)comp;
+				if (menu.getText() == null || "".equals(menu.getText()))
+					continue;
+				ExportedMenu exported = new ExportedMenu(registry.register(menu),
+						menu.getText(), menu.isEnabled());
+				currentMenus.add(exported);
+				currentIds.add(exported.id);
+			}
+		for (Iterator<ExportedMenu> it = exportedMenus.iterator(); it.hasNext();) {
+			ExportedMenu exported = it.next();
+			if (!currentIds.contains(exported.id)) {
+				removeMenu(windowxid, exported.id);
+				it.remove();
+				JMenu menu = getJMenu(exported.id);
+				if (menu != null)
+					invalidMenus.add(menu);
+			}
+		}
+		for (int position = 0; position < currentMenus.size(); position++) {
+			ExportedMenu current = currentMenus.get(position);
+			int index = position;
+			while (index < exportedMenus.size() && exportedMenus.get(index).id != current.id)
+				index++;
+			if (index == exportedMenus.size()) {
+				insertMenu(windowxid, current.id, MenuBuffer.encodeLabel(current.label),
+						current.enabled, position);
+				exportedMenus.add(position, current);
+				invalidMenus.add(getJMenu(current.id));
+				continue;
+			}
+			ExportedMenu exported = exportedMenus.get(index);
+			if (index != position) {
+				moveMenu(windowxid, exported.id, position);
+				exportedMenus.add(position, exportedMenus.remove(index));
+			}
+			if (!exported.label.equals(current.label) || exported.enabled != current.enabled) {
+				updateMenu(windowxid, exported.id, MenuBuffer.encodeLabel(current.label), current.enabled);
+				exported.label = current.label;
+				exported.enabled = current.enabled;
 			}
+		}
+		schedulePrefetch(invalidMenus);
 	}
 	
 	/**
-	 * Este método es invocado por la interface nativa en caso de que
-	 * existe un applicationmenu registrado
+	 * Espera entre revisiones de la cola de eventos de AWT antes de exportar
+	 * anticipadamente un menu de la barra
 	 */
-	private synchronized void install() {
-		Toolkit.getDefaultToolkit()
-				.addAWTEventListener(ApplicationMenu.this, AWTEvent.KEY_EVENT_MASK);
-		buildMenuBar(true);
-		if (allowDynamicMenuBar)
-			menubar.addContainerListener(ApplicationMenu.this);
-		menubar.setVisible(false);
-	}
+	private static final int prefetchDelay = Integer.getInteger("jayatana.prefetch.delay", 50);
+	private Timer prefetchTimer;
+	
 	/**
-	 * Este método es invocado por la interface nativa en caso de que se
-	 * deshabilite al applicationmenu registrado
+	 * Invalida los submenus recreados y programa la exportación anticipada
+	 * de los menus de la barra en el hilo de eventos de AWT
+	 * 
+	 * @param invalidMenus submenus cuyos hijos nativos fueron destruidos
 	 */
-	private synchronized void uninstall() {
-		if (allowDynamicMenuBar) {
-			for (Component comp : menubar.getComponents()) {
-				if (comp instanceof JMenu) {
-					((JMenu)comp).removeComponentListener(this);
-					((JMenu)comp).removePropertyChangeListener(this);
+	private void schedulePrefetch(final List<JMenu> invalidMenus) {
+		EventQueue.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				for (JMenu menu : invalidMenus)
+					submenuCache.removed(menu);
+				if (prefetchTimer == null) {
+					prefetchTimer = new Timer(prefetchDelay, new ActionListener() {
+						@Override
+						public void actionPerformed(ActionEvent e) {
+							// solo se exporta cuando no hay eventos de AWT pendientes
+							if (installed && (!isEventQueueIdle() || prefetchMenuBar()))
+								prefetchTimer.restart();
+						}
+					});
+					prefetchTimer.setRepeats(false);
 				}
+				prefetchTimer.restart();
 			}
-			menubar.removeContainerListener(ApplicationMenu.this);
+		});
+	}
+	/**
+	 * Indica si la cola de eventos de AWT no tiene eventos pendientes
+	 * 
+	 * @return <code>True</code> si no hay eventos pendientes
+	 */
+	private static boolean isEventQueueIdle() {
+		try {
+			return Toolkit.getDefaultToolkit().getSystemEventQueue().peekEvent() == null;
+		} catch (SecurityException e) {
+			return true;
 		}
-		Toolkit.getDefaultToolkit().removeAWTEventListener(ApplicationMenu.this);
-		menubar.setVisible(true);
 	}
-	
 	/**
-	 * Obtene un menu del hashcode
+	 * Indica si el submenu tiene acciones al mostrarse que pueden cambiar
+	 * sus hijos, estos submenus no se exportan anticipadamente ni se
+	 * obtienen del cache.
 	 * 
-	 * @param hashcode identificador
-	 * @return menu
+	 * @param menu submenu
+	 * @return <code>True</code> si tiene <code>MenuListener</code>
 	 */
-	private JMenuItem getJMenuItem(int hashcode) {
-		for (Component comp : menubar.getComponents())
-			if (comp instanceof JMenuItem) {
-				JMenuItem item;
-				if ((item = getJMenuItem((JMenuItem)comp, hashcode)) != null)
-					return item;
-			}
-		return null;
+	private static boolean hasMenuListeners(JMenu menu) {
+		return menu.getMenuListeners().length > 0;
 	}
 	/**
-	 * Obtene un menu del hashcode
+	 * Exporta anticipadamente los hijos de un menu de la barra que no este
+	 * vigente en el cache, sin invocar las acciones de mostrar. Se exporta un
+	 * menu por vez para no retener el hilo de eventos de AWT.
 	 * 
-	 * @param menu menu padre
-	 * @param hashcode identificador
-	 * @return menu
+	 * @return <code>True</code> si se exportó un menu y pueden quedar otros
 	 */
-	private JMenuItem getJMenuItem(JMenuItem menu, int hashcode) {
-		if (menu.hashCode() == hashcode) {
-			return menu;
-		} else if (menu instanceof JMenu) {
-			for (Component comp : ((JMenu)menu).getMenuComponents())
-				if (comp instanceof JMenuItem) {
-					JMenuItem item;
-					if ((item = getJMenuItem((JMenuItem)comp, hashcode)) != null)
-						return item;
-				}
+	private boolean prefetchMenuBar() {
+		for (Component comp : menubar.getComponents()) {
+			if (!(comp instanceof JMenu) || submenuCache.contains((JMenu)comp) ||
+					hasMenuListeners((JMenu)comp))
+				continue;
+			JMenu menu = (JMenu)comp;
+			int id = registry.register(menu);
+			if (!isExported(id))
+				continue;
+			MenuBuffer buffer = exportMenu(menu);
+			replaceMenuItems(windowxid, id, buffer.getBuffer(), buffer.getLength());
+			releaseMenuBuffer(buffer);
+			return true;
 		}
-		return null;
+		return false;
 	}
-	
 	/**
-	 * Obtener un menu del del acelerador
+	 * Indica si el menu de la barra está exportado
 	 * 
-	 * @param keycode codigo de teclado
-	 * @param modifiers modificador
-	 * @return 
+	 * @param id identificador de menu
+	 * @return <code>True</code> si está exportado
 	 */
-	private JMenuItem getJMenuItem(int keycode, int modifiers) {
-		for (Component comp : menubar.getComponents())
-			if (comp instanceof JMenuItem) {
-				JMenuItem item;
-				if ((item = getJMenuItem((JMenuItem)comp, keycode, modifiers)) != null)
-					return item;
+	private boolean isExported(int id) {
+		for (ExportedMenu exported : exportedMenus)
+			if (exported.id == id)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Este método es invocado por la interface nativa en caso de que
+	 * existe un applicationmenu registrado, la barra de menus se construye
+	 * en el hilo de eventos de AWT.
+	 */
+	private void install() {
+		EventQueue.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				Toolkit.getDefaultToolkit()
+						.addAWTEventListener(ApplicationMenu.this, AWTEvent.KEY_EVENT_MASK);
+				installed = true;
+				buildMenuBar(true);
+				if (allowDynamicMenuBar)
+					menubar.addContainerListener(ApplicationMenu.this);
+				menubar.setVisible(false);
 			}
-		return null;
+		});
 	}
 	/**
-	 * Obtener un menu del del acelerador
-	 * 
-	 * @param menu menu padre
-	 * @param keycode codigo de teclado
-	 * @param modifiers modificador
-	 * @return 
+	 * Este método es invocado por la interface nativa en caso de que se
+	 * deshabilite al applicationmenu registrado, la barra de menus se
+	 * restaura en el hilo de eventos de AWT.
 	 */
-	private JMenuItem getJMenuItem(JMenuItem menu, int keycode, int modifiers) {
-		if (menu instanceof JMenu) {
-			for (Component comp : ((JMenu)menu).getMenuComponents())
-				if (comp instanceof JMenuItem) {
-					JMenuItem item;
-					if ((item = getJMenuItem((JMenuItem)comp, keycode, modifiers)) != null)
-						return item;
+	private void uninstall() {
+		EventQueue.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (allowDynamicMenuBar) {
+					for (Component comp : menubar.getComponents()) {
+						if (comp instanceof JMenu) {
+							((JMenu)comp).removeComponentListener(ApplicationMenu.this);
+							((JMenu)comp).removePropertyChangeListener(ApplicationMenu.this);
+						}
+					}
+					menubar.removeContainerListener(ApplicationMenu.this);
 				}
-		} else {
-			if (menu.getAccelerator() == null)
-				return null;
-			else if (menu.getAccelerator().getKeyCode() == keycode &&
-					menu.getAccelerator().getModifiers() == modifiers)
-				return menu;
-		}
-		return null;
+				Toolkit.getDefaultToolkit().removeAWTEventListener(ApplicationMenu.this);
+				installed = false;
+				RebuildScheduler.getInstance().cancel(ApplicationMenu.this);
+				if (prefetchTimer != null)
+					prefetchTimer.stop();
+				accelerators.dispose();
+				exportedMenus.clear();
+				submenuCache.clear();
+				menubar.setVisible(true);
+			}
+		});
 	}
 	
 	/**
-	 * Invoca el evento de menu basado en el identificador de menu
+	 * Obtiene un submenu del identificador
+	 * 
+	 * @param id identificador de menu
+	 * @return submenu o <code>null</code> si no existe
+	 */
+	private JMenu getJMenu(int id) {
+		JMenuItem menuitem = registry.get(id);
+		if (menuitem instanceof JMenu)
+			return (JMenu)menuitem;
+		return null;
+	}
+	/**
+	 * Invoca el evento de menu basado en el identificador de menu, se
+	 * atiende junto con los demás eventos pendientes en el hilo de eventos
+	 * de AWT.
 	 * 
-	 * @param hashcode identificador de menu
+	 * @param id identificador de menu
 	 */
-	private void itemActivated(int hashcode) {
-		invokeMenuItem(getJMenuItem(hashcode), false);
+	private void itemActivated(int id) {
+		MenuEventRing.getInstance().offer(events, MenuEventRing.ACTIVATED, id, 0);
 	}
 	/**
 	 * Invoca el evento de menu antes de mostrarse
 	 * 
-	 * @param hashcode identificador de menu
+	 * @param id identificador de menu
 	 */
-	private void itemAboutToShow(int hashcode) {
-		invokeSelectMenu((JMenu)getJMenuItem(hashcode));
+	private void itemAboutToShow(int id) {
+		invokeSelectMenu(id, getJMenu(id));
 	}
 	/**
-	 * Invoca el evento de menu después de mostrarse
-	 * @param hashcode 
+	 * Invoca el evento de menu después de mostrarse, se atiende junto con
+	 * los demás eventos pendientes en el hilo de eventos de AWT.
+	 * 
+	 * @param id identificador de menu
+	 */
+	private void itemAfterShow(int id) {
+		MenuEventRing.getInstance().offer(events, MenuEventRing.AFTER_SHOW, id, shows.close(id));
+	}
+	/**
+	 * Atiende un evento de menu de la cola de eventos, se ejecuta en el hilo
+	 * de eventos de AWT.
+	 * 
+	 * @param type tipo de evento
+	 * @param id identificador de menu
+	 * @param token número de secuencia de la apertura que se cierra
 	 */
-	private void itemAfterShow(int hashcode) {
-		invokeDeselectMenu((JMenu)getJMenuItem(hashcode));
+	private void handleMenuEvent(int type, int id, long token) {
+		switch (type) {
+			case MenuEventRing.ACTIVATED:
+				JMenuItem menuitem = registry.get(id);
+				if (menuitem != null && menuitem.isEnabled() && menuitem.isVisible())
+					activateMenuItem(menuitem, false);
+				break;
+			case MenuEventRing.AFTER_SHOW:
+				// una selección que aún no se ejecuta se cancela
+				JMenu menu = getJMenu(id);
+				if (shows.deselect(id, token) && menu != null)
+					deselectMenu(menu);
+				break;
+		}
 	}
 	
 	/**
@@ -549,106 +869,246 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 				EventQueue.invokeLater(new Runnable() {
 					@Override
 					public void run() {
-						if (extraMenuAction.allowMenuAction(window, menubar, menuitem, true, shortcut)) {
-							menuitem.getModel().setArmed(true);
-							menuitem.getModel().setPressed(true);
-							
-							extraMenuAction.invokeMenu(window, menubar, menuitem, true, shortcut);
-							
-							menuitem.getModel().setPressed(false);
-							menuitem.getModel().setArmed(false);
-						}
+						activateMenuItem(menuitem, shortcut);
 					}
 				});
 			}
 	}
+	/**
+	 * Ejecuta la accion de un elemento de menu, se ejecuta en el hilo de
+	 * eventos de AWT.
+	 * 
+	 * @param menuitem menu
+	 * @param shortcut <code>True</code> si se invoca por acelerador
+	 */
+	private void activateMenuItem(JMenuItem menuitem, boolean shortcut) {
+		if (extraMenuAction.allowMenuAction(window, menubar, menuitem, true, shortcut)) {
+			menuitem.getModel().setArmed(true);
+			menuitem.getModel().setPressed(true);
+			
+			extraMenuAction.invokeMenu(window, menubar, menuitem, true, shortcut);
+			
+			menuitem.getModel().setPressed(false);
+			menuitem.getModel().setArmed(false);
+		}
+	}
+	
+	/**
+	 * Tiempo máximo que el hilo de GMainLoop espera los menus hijos antes de
+	 * responder con los menus actuales
+	 */
+	private static final long aboutToShowTimeout = Long.getLong("jayatana.aboutToShow.timeout", 100);
+	
+	private static ExecutorService prepareExecutor;
+	
+	/**
+	 * Obtiene el hilo de fondo donde se calcula el contenido de los submenus
+	 * con <code>AsyncExtraMenuAction</code>
+	 * 
+	 * @return ejecutor compartido
+	 */
+	private synchronized static ExecutorService getPrepareExecutor() {
+		if (prepareExecutor == null)
+			prepareExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "jayatana-prepare");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		return prepareExecutor;
+	}
+	
+	/**
+	 * Solicitud de menus hijos de un submenu, se calcula en el hilo de
+	 * eventos de AWT. Si el hilo de GMainLoop deja de esperar, el resultado
+	 * se publica al terminar.
+	 */
+	private class MenuAboutToShow implements Runnable {
+		private final int id;
+		private final JMenu menu;
+		private final long token;
+		private Object content;
+		private MenuBuffer result;
+		private boolean done = false;
+		private boolean waiting = true;
+		
+		public MenuAboutToShow(int id, JMenu menu) {
+			this.id = id;
+			this.menu = menu;
+			this.token = shows.open(id);
+		}
+		
+		/**
+		 * Calcula el contenido del submenu fuera del hilo de eventos de AWT
+		 * y después publica la solicitud en el hilo de eventos de AWT.
+		 * 
+		 * @param action acción adicional asíncrona
+		 */
+		public void prepare(AsyncExtraMenuAction<?> action) {
+			try {
+				content = action.prepareMenu(window, menubar, menu);
+			} finally {
+				EventQueue.invokeLater(this);
+			}
+		}
+		
+		@Override
+		public void run() {
+			// si el submenu ya se cerró no se selecciona
+			MenuBuffer buffer = shows.select(id, token) ? selectMenu(menu, content) : null;
+			synchronized (this) {
+				result = buffer;
+				done = true;
+				if (waiting) {
+					notifyAll();
+					return;
+				}
+			}
+			if (buffer != null) {
+				replaceMenuItems(windowxid, id, buffer.getBuffer(), buffer.getLength());
+				releaseMenuBuffer(buffer);
+			}
+		}
+		/**
+		 * Espera el resultado
+		 * 
+		 * @param timeout tiempo máximo de espera en milisegundos
+		 * @return menus hijos o <code>null</code> si no termino a tiempo
+		 */
+		public synchronized MenuBuffer await(long timeout) {
+			long deadline = System.currentTimeMillis() + timeout;
+			try {
+				long remaining;
+				while (!done && (remaining = deadline - System.currentTimeMillis()) > 0)
+					wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			waiting = false;
+			return result;
+		}
+	}
 	
 	/**
-	 * Invokar menu
+	 * Invokar menu, es invocado desde el hilo de GMainLoop y no bloquea mas
+	 * de <code>jayatana.aboutToShow.timeout</code> milisegundos.
 	 * 
+	 * @param id identificador de menu
 	 * @param menu 
 	 */
-	private void invokeSelectMenu(final JMenu menu) {
+	private void invokeSelectMenu(int id, JMenu menu) {
 		if (menu != null) 
 			if (menu.isEnabled() && menu.isVisible()) {
-				try {
-				EventQueue.invokeAndWait(new Runnable() {
-					@Override
-					public void run() {
-						if (extraMenuAction.allowMenuAction(window, menubar, menu, true, false)) {
-							
-							extraMenuAction.beforInvokeMenu(window, menubar, menu, true, false);
+				final MenuAboutToShow aboutToShow = new MenuAboutToShow(id, menu);
+				if (extraMenuAction instanceof AsyncExtraMenuAction) {
+					// el calculo del contenido no ocupa el hilo de eventos de AWT
+					final AsyncExtraMenuAction<?> action = (AsyncExtraMenuAction<?>)extraMenuAction;
+					getPrepareExecutor().execute(new Runnable() {
+						@Override
+						public void run() {
+							aboutToShow.prepare(action);
+						}
+					});
+				} else {
+					EventQueue.invokeLater(aboutToShow);
+				}
+				MenuBuffer buffer = aboutToShow.await(aboutToShowTimeout);
+				if (buffer != null) {
+					replaceMenuItems(windowxid, id, buffer.getBuffer(), buffer.getLength());
+					releaseMenuBuffer(buffer);
+				}
+			}
+	}
+	/**
+	 * Invoca las acciones de mostrar el submenu y genera sus menus hijos,
+	 * se ejecuta en el hilo de eventos de AWT.
+	 * 
+	 * @param menu submenu
+	 * @param content contenido calculado por <code>AsyncExtraMenuAction</code>
+	 * o <code>null</code>
+	 * @return menus hijos o <code>null</code> si no se permite la acción
+	 */
+	@SuppressWarnings("unchecked")
+	private MenuBuffer selectMenu(JMenu menu, Object content) {
+		if (!extraMenuAction.allowMenuAction(window, menubar, menu, true, false))
+			return null;
+		
+		extraMenuAction.beforInvokeMenu(window, menubar, menu, true, false);
 
-							menu.getModel().setSelected(true);
+		menu.getModel().setSelected(true);
 
-							JPopupMenu popupMenu = menu.getPopupMenu();
-							PopupMenuEvent pevent = new PopupMenuEvent(popupMenu);
-							for (PopupMenuListener pl : menu.getPopupMenu().getPopupMenuListeners())
-								if (pl != null) pl.popupMenuWillBecomeVisible(pevent);
+		JPopupMenu popupMenu = menu.getPopupMenu();
+		PopupMenuEvent pevent = new PopupMenuEvent(popupMenu);
+		for (PopupMenuListener pl : menu.getPopupMenu().getPopupMenuListeners())
+			if (pl != null) pl.popupMenuWillBecomeVisible(pevent);
 
-							extraMenuAction.invokeMenu(window, menubar, menu, true, false);
-							
-							for (Component comp : popupMenu.getComponents()) {
-								if (comp.isVisible()) {
-									if (comp instanceof JMenu)
-										addMenu((JMenu)comp);
-									else if (comp instanceof JMenuItem)
-										addMenuItem((JMenuItem)comp);
-									else if (comp instanceof JSeparator)
-										addSeparator();
-								}
-							}
-							
-							extraMenuAction.afterInvokeMenu(window, menubar, menu, true, false);
-						}
-					}
-				});
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				} catch (InvocationTargetException e) {
-					throw new RuntimeException(e);
+		extraMenuAction.invokeMenu(window, menubar, menu, true, false);
+		
+		if (content != null)
+			((AsyncExtraMenuAction<Object>)extraMenuAction).applyMenu(window, menubar, menu, content);
+		
+		// si los hijos no cambiaron desde la ultima exportación no se reemplazan,
+		// los submenus con MenuListener se exportan siempre
+		MenuBuffer buffer = !hasMenuListeners(menu) && submenuCache.lookup(menu) ? null : exportMenu(menu);
+		
+		extraMenuAction.afterInvokeMenu(window, menubar, menu, true, false);
+		return buffer;
+	}
+	/**
+	 * Genera los menus hijos del submenu y lo registra en el cache de
+	 * submenus exportados, se ejecuta en el hilo de eventos de AWT.
+	 * 
+	 * @param menu submenu
+	 * @return menus hijos
+	 */
+	private MenuBuffer exportMenu(JMenu menu) {
+		MenuBuffer buffer = obtainMenuBuffer();
+		Set<JMenu> menus = new HashSet<JMenu>();
+		for (Component comp : menu.getPopupMenu().getComponents()) {
+			if (comp.isVisible()) {
+				if (comp instanceof JMenuItem) {
+					if (addMenuItem(buffer, (JMenuItem)comp) && comp instanceof JMenu)
+						menus.add((JMenu)comp);
+				} else if (comp instanceof JSeparator) {
+					buffer.addSeparator();
 				}
 			}
+		}
+		submenuCache.exported(menu, menus);
+		return buffer;
 	}
 	
-	private void invokeDeselectMenu(final JMenu menu) {
-		if (menu != null) 
-			if (menu.isEnabled() && menu.isVisible()) {
-				try {
-				EventQueue.invokeAndWait(new Runnable() {
-					@Override
-					public void run() {
-						if (extraMenuAction.allowMenuAction(window, menubar, menu, false, false)) {
-							extraMenuAction.beforInvokeMenu(window, menubar, menu, false, false);
-							
-							extraMenuAction.invokeMenu(window, menubar, menu, false, false);
-							
-							PopupMenuEvent pevent = new PopupMenuEvent(menu.getPopupMenu());
-							for (PopupMenuListener pl : menu.getPopupMenu().getPopupMenuListeners())
-								if (pl != null) pl.popupMenuWillBecomeInvisible(pevent);
+	/**
+	 * Invoca las acciones de ocultar el submenu, se ejecuta en el hilo de
+	 * eventos de AWT.
+	 * 
+	 * @param menu submenu
+	 */
+	private void deselectMenu(JMenu menu) {
+		if (extraMenuAction.allowMenuAction(window, menubar, menu, false, false)) {
+			extraMenuAction.beforInvokeMenu(window, menubar, menu, false, false);
+			
+			extraMenuAction.invokeMenu(window, menubar, menu, false, false);
+			
+			PopupMenuEvent pevent = new PopupMenuEvent(menu.getPopupMenu());
+			for (PopupMenuListener pl : menu.getPopupMenu().getPopupMenuListeners())
+				if (pl != null) pl.popupMenuWillBecomeInvisible(pevent);
 
-							menu.getModel().setSelected(false);
-							
-							extraMenuAction.afterInvokeMenu(window, menubar, menu, false, false);
-						}
-					}
-				});
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				} catch (InvocationTargetException e) {
-					throw new RuntimeException(e);
-				}
-			}
+			menu.getModel().setSelected(false);
+			
+			extraMenuAction.afterInvokeMenu(window, menubar, menu, false, false);
+		}
 	}
 	
 	/**
 	 * Invokar eventos de acceleradores de menus
 	 * 
-	 * @param modifiers
-	 * @param keycode 
+	 * @param menuitem menu del acelerador
 	 */
-	private void invokeAccelerator(int keycode, int modifiers) {
-		invokeMenuItem(getJMenuItem(keycode, modifiers), true);
+	private void invokeAccelerator(JMenuItem menuitem) {
+		invokeMenuItem(menuitem, true);
 	}
 	
 	/**
@@ -678,8 +1138,11 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 					e.getKeyCode() != KeyEvent.VK_SHIFT &&
 					e.getKeyCode() != KeyEvent.VK_CONTROL &&
 					e.getKeyCode() != KeyEvent.VK_META &&
-					e.getKeyCode() != KeyEvent.VK_ALT_GRAPH &&
-					window.isActive()) {
+					e.getKeyCode() != KeyEvent.VK_ALT_GRAPH) {
+				// la mayoria de las teclas no son aceleradores
+				JMenuItem menuitem = accelerators.get(e.getKeyCode(), e.getModifiersEx() | e.getModifiers());
+				if (menuitem == null || !window.isActive())
+					return;
 				Window currwindow;
 				if (event.getSource() instanceof Component)
 					currwindow = getWindow((Component)event.getSource());
@@ -690,7 +1153,7 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 				else 
 					currwindow = null;
 				if (window.equals(currwindow))
-					invokeAccelerator(e.getKeyCode(), e.getModifiersEx() | e.getModifiers());
+					invokeAccelerator(menuitem);
 			}
 		}
 	}
@@ -698,36 +1161,49 @@ final public class ApplicationMenu implements WindowListener, AWTEventListener,
 	/*
 	 * Eventos sobre la barra de menus
 	 */
-	private long approveRebuild = -1;
-	private void rebuildMenuBar() {
-		if (approveRebuild == -1) {
-			approveRebuild = System.currentTimeMillis()+500;
-			new Thread() {
-				@Override
-				public void run() {
-					try {
-						while (System.currentTimeMillis() < approveRebuild)
-							Thread.sleep(100);
-					} catch (InterruptedException e) {
-						Logger.getLogger(ApplicationMenu.class.getName())
-								.log(Level.WARNING, "Can't wait approve rebuild", e);
-					} finally {
-						removeAllMenus();
-						buildMenuBar();
-						approveRebuild = -1;
-					}
-				}
-			}.start();
-		} else {
-			approveRebuild = System.currentTimeMillis()+500;
+	private final Runnable rebuildTask = new Runnable() {
+		@Override
+		public void run() {
+			// la ventana pudo desinstalarse mientras la reconstrucción esperaba
+			if (installed)
+				syncMenuBar();
 		}
+	};
+	private void rebuildMenuBar() {
+		RebuildScheduler.getInstance().schedule(this, rebuildTask);
 	}
 	@Override
 	public void propertyChange(PropertyChangeEvent evt) {
-		if ("enabled".equals(evt.getPropertyName()))
+		if ("enabled".equals(evt.getPropertyName()) || "text".equals(evt.getPropertyName()))
 			if (evt.getSource() instanceof JMenu) {
-				rebuildMenuBar();
+				if (!updateExportedMenu((JMenu)evt.getSource()))
+					rebuildMenuBar();
+			}
+	}
+	/**
+	 * Actualiza de inmediato la etiqueta y el estado de un menu de la barra
+	 * ya exportado
+	 * 
+	 * @param menu menu de la barra
+	 * @return <code>False</code> si es necesario sincronizar la barra
+	 */
+	private boolean updateExportedMenu(JMenu menu) {
+		if (menu.getText() == null || "".equals(menu.getText()))
+			return false;
+		int id = registry.register(menu);
+		for (ExportedMenu exported : exportedMenus)
+			if (exported.id == id) {
+				if (!exported.label.equals(menu.getText())) {
+					exported.label = menu.getText();
+					setItemLabel(windowxid, id, MenuBuffer.encodeLabel(exported.label));
+				}
+				if (exported.enabled != menu.isEnabled()) {
+					exported.enabled = menu.isEnabled();
+					setItemEnabled(windowxid, id, exported.enabled);
+				}
+				return true;
 			}
+		return false;
 	}
 	@Override
 	public void componentAdded(ContainerEvent e) {
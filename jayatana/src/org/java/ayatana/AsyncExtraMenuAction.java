@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2012 Jared González.
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import java.awt.Window;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+
+/**
+ * Interface opcional para acciones adicionales que calculan el contenido de
+ * los submenus fuera del hilo de eventos de AWT. Antes de mostrar un submenu
+ * se invoca <code>prepareMenu</code> en un hilo de fondo, y el resultado se
+ * entrega a <code>applyMenu</code> en el hilo de eventos de AWT después de
+ * <code>invokeMenu</code> y antes de exportar los menus hijos.
+ * 
+ * @param <T> descripción inmutable del contenido del submenu
+ */
+public interface AsyncExtraMenuAction<T> extends ExtraMenuAction {
+	/**
+	 * Calcula el contenido del submenu, se ejecuta fuera del hilo de eventos
+	 * de AWT por lo que no debe modificar componentes Swing.
+	 * @param window ventana
+	 * @param menubar barra de menus
+	 * @param menu submenu que se va a mostrar
+	 * @return descripción inmutable del contenido o <code>null</code> si no
+	 * hay cambios que aplicar
+	 */
+	public T prepareMenu(Window window, JMenuBar menubar, JMenu menu);
+	/**
+	 * Aplica el contenido calculado al submenu, se ejecuta en el hilo de
+	 * eventos de AWT.
+	 * @param window ventana
+	 * @param menubar barra de menus
+	 * @param menu submenu que se va a mostrar
+	 * @param content descripción calculada por <code>prepareMenu</code>
+	 */
+	public void applyMenu(Window window, JMenuBar menubar, JMenu menu, T content);
+}
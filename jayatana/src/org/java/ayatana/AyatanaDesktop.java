@@ -145,68 +145,57 @@ final public class AyatanaDesktop {
 				+icon.getIconWidth()+"x"+icon.getIconWidth()
 				+"/apps/"+name+"."+extensionIconName);
 		
-		if (iconFile.exists() && iconFile.isFile()) {
-			String iconTargetMD5;
-			try {
-				FileInputStream fis = new FileInputStream(iconFile);
-				iconTargetMD5 = getMD5Checksum(fis);
-				fis.close();
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-			
-			String iconSourceMD5;
+		try {
+			return ResourceExtractor.extract(urlIcon, iconFile, new IconTarget(urlIcon));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Control de vigencia de un icono instalado, el icono es vigente si su
+	 * checksum coincide con el del icono original. Al instalarse se
+	 * actualiza el cache de iconos.
+	 */
+	private static class IconTarget implements ResourceExtractor.Target {
+		private final URL urlIcon;
+		private String iconSourceMD5;
+		
+		public IconTarget(URL urlIcon) {
+			this.urlIcon = urlIcon;
+		}
+		
+		@Override
+		public boolean isCurrent(File file) {
+			if (!file.exists() || !file.isFile())
+				return false;
 			try {
-				InputStream inputSource = urlIcon.openStream();
-				iconSourceMD5 = getMD5Checksum(inputSource);
-				inputSource.close();
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-			
-			if (!iconSourceMD5.equals(iconTargetMD5)) {
-				iconFile.getParentFile().mkdirs();
-				try {
-					InputStream input = urlIcon.openStream();
-					FileOutputStream fos = new FileOutputStream(iconFile);
-					byte buff[] = new byte[1024];
-					int read;
-					while ((read = input.read(buff)) > 0)
-						fos.write(buff, 0, read);
-					fos.flush();
-					fos.close();
-					input.close();
-				} catch (IOException e) {
-					throw new RuntimeException(e);
+				if (iconSourceMD5 == null) {
+					InputStream inputSource = urlIcon.openStream();
+					try {
+						iconSourceMD5 = getMD5Checksum(inputSource);
+					} finally {
+						inputSource.close();
+					}
 				}
+				FileInputStream fis = new FileInputStream(file);
 				try {
-					Runtime.getRuntime().exec("xdg-icon-resource forceupdate");
-				} catch (IOException e) {}
-				return true;
-			} else {
-				return false;
-			}
-		} else {
-			iconFile.getParentFile().mkdirs();
-			try {
-				InputStream input = urlIcon.openStream();
-				FileOutputStream fos = new FileOutputStream(iconFile);
-				byte buff[] = new byte[1024];
-				int read;
-				while ((read = input.read(buff)) > 0)
-					fos.write(buff, 0, read);
-				fos.flush();
-				fos.close();
-				input.close();
+					return iconSourceMD5.equals(getMD5Checksum(fis));
+				} finally {
+					fis.close();
+				}
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
+		}
+		@Override
+		public void extracted(File file) {
+			// actualizar el cache de iconos antes de que otra JVM lo revise
 			try {
 				Runtime.getRuntime().exec("xdg-icon-resource forceupdate");
 			} catch (IOException e) {
 				//ignorar
 			}
-			return true;
 		}
 	}
 }
@@ -27,7 +27,11 @@
 package org.java.ayatana;
 
 import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.Properties;
+import java.util.jar.JarEntry;
 
 /**
  * Clase para carga de librería libjayatana.so
@@ -59,6 +63,144 @@ final public class AyatanaLibrary {
 		return prop.getProperty("DISTRIB_RELEASE", "UNKNOW");
 	}
 	
+	/**
+	 * Obtiene la firma MD5 de la librería incluida en el jar, se usa la firma
+	 * generada al construir el jar y si no existe se calcula.
+	 * 
+	 * @param sourceLibrary recurso de la librería
+	 * @return firma MD5
+	 * @throws IOException 
+	 */
+	private static String getLibraryChecksum(String sourceLibrary) throws IOException {
+		InputStream input = AyatanaLibrary.class.getResourceAsStream(sourceLibrary+".md5");
+		if (input != null) {
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(input, "US-ASCII"));
+				String line = reader.readLine();
+				if (line != null && line.trim().length() > 0)
+					return line.trim().split("\\s")[0].toLowerCase();
+			} finally {
+				input.close();
+			}
+		}
+		input = AyatanaLibrary.class.getResourceAsStream(sourceLibrary);
+		if (input == null)
+			throw new FileNotFoundException(sourceLibrary);
+		try {
+			return AyatanaDesktop.getMD5Checksum(input).toLowerCase();
+		} finally {
+			input.close();
+		}
+	}
+	/**
+	 * Obtiene el tamaño y la fecha de modificación del recurso sin leer su
+	 * contenido, desde la entrada del jar o desde el archivo.
+	 * 
+	 * @param source recurso
+	 * @return tamaño y fecha o <code>null</code> si no se conocen
+	 */
+	private static long[] getResourceInfo(URL source) {
+		try {
+			URLConnection connection = source.openConnection();
+			if (connection instanceof JarURLConnection) {
+				JarEntry entry = ((JarURLConnection)connection).getJarEntry();
+				if (entry != null && entry.getSize() >= 0 && entry.getTime() >= 0)
+					return new long[] {entry.getSize(), entry.getTime()};
+			} else if ("file".equals(source.getProtocol())) {
+				File file = new File(source.toURI());
+				return new long[] {file.length(), file.lastModified()};
+			}
+		} catch (Exception e) {
+			// se decide por la firma MD5
+		}
+		return null;
+	}
+	/**
+	 * Control de vigencia de la librería extraída. Al iniciar solo se
+	 * comparan la versión, el tamaño y la fecha del recurso y de la librería
+	 * extraída con el registro de extracción; la firma MD5 solo se lee si el
+	 * recurso no coincide con el registro.
+	 */
+	private static class LibraryTarget implements ResourceExtractor.Target {
+		private final String sourceLibrary;
+		private final File stampFile;
+		private final long[] sourceInfo;
+		private String checksum;
+		
+		public LibraryTarget(URL source, String sourceLibrary, File stampFile) {
+			this.sourceLibrary = sourceLibrary;
+			this.stampFile = stampFile;
+			this.sourceInfo = getResourceInfo(source);
+		}
+		
+		/**
+		 * Obtiene la firma MD5 de la librería incluida en el jar una sola vez
+		 */
+		private String getChecksum() throws IOException {
+			if (checksum == null)
+				checksum = getLibraryChecksum(sourceLibrary);
+			return checksum;
+		}
+		@Override
+		public boolean isCurrent(File file) {
+			Properties stamp = new Properties();
+			try {
+				FileInputStream fis = new FileInputStream(stampFile);
+				try {
+					stamp.load(fis);
+				} finally {
+					fis.close();
+				}
+			} catch (IOException e) {
+				return false;
+			}
+			if (!LIB_VERSION.equals(stamp.getProperty("version")) ||
+					!String.valueOf(file.length()).equals(stamp.getProperty("size")) ||
+					!String.valueOf(file.lastModified()).equals(stamp.getProperty("modified")))
+				return false;
+			if (sourceInfo != null &&
+					String.valueOf(sourceInfo[0]).equals(stamp.getProperty("source.size")) &&
+					String.valueOf(sourceInfo[1]).equals(stamp.getProperty("source.modified")))
+				return true;
+			// el recurso cambio o no se conoce, se compara la firma
+			try {
+				if (!getChecksum().equals(stamp.getProperty("checksum")))
+					return false;
+				writeStamp(file);
+				return true;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+		@Override
+		public void extracted(File file) throws IOException {
+			writeStamp(file);
+		}
+		/**
+		 * Registra la versión, la firma, el tamaño y la fecha del recurso y
+		 * de la librería extraída.
+		 * 
+		 * @param file librería extraída
+		 * @throws IOException 
+		 */
+		private void writeStamp(File file) throws IOException {
+			Properties stamp = new Properties();
+			stamp.setProperty("version", LIB_VERSION);
+			stamp.setProperty("checksum", getChecksum());
+			stamp.setProperty("size", String.valueOf(file.length()));
+			stamp.setProperty("modified", String.valueOf(file.lastModified()));
+			if (sourceInfo != null) {
+				stamp.setProperty("source.size", String.valueOf(sourceInfo[0]));
+				stamp.setProperty("source.modified", String.valueOf(sourceInfo[1]));
+			}
+			FileOutputStream fos = new FileOutputStream(stampFile);
+			try {
+				stamp.store(fos, "libjayatana.so");
+			} finally {
+				fos.close();
+			}
+		}
+	}
 	/**
 	 * Carga la library libjayatana.so.
 	 */
@@ -67,54 +209,24 @@ final public class AyatanaLibrary {
 			try {
 				File targetLibrary = new File("/usr/lib/jayatana/libjayatana.so."+JNI_VERSION);
 				if (!targetLibrary.exists()) {
-					final File targetDirectory = new File(
+					File targetDirectory = new File(
 							System.getProperty("user.home"), ".java/jayatana/"+JNI_VERSION+"/"+
 							System.getProperty("os.arch"));
 					targetLibrary = new File(targetDirectory, "libjayatana.so");
+					File stampFile = new File(targetDirectory, "libjayatana.so.stamp");
 					String sourceLibrary = "/native/"+getUbuntuVersion()+"/"+
 							System.getProperty("os.arch")+"/libjayatana.so";
 					if (AyatanaLibrary.class.getResource(sourceLibrary) == null)
 						sourceLibrary = "/native/UNKNOW/"+
 							System.getProperty("os.arch")+"/libjayatana.so";
-
-					if (targetLibrary.exists()) {
-						FileInputStream fis = new FileInputStream(targetLibrary);
-						String chksum = AyatanaDesktop.getMD5Checksum(fis);
-						fis.close();
-						InputStream input = AyatanaLibrary.class.getResourceAsStream(sourceLibrary);
-						if (input == null)
-							throw new Exception("not library exists");
-						String chksumint = AyatanaDesktop.getMD5Checksum(input);
-						input.close();
-
-						if (!chksumint.equals(chksum)) {
-							targetLibrary.delete();
-							input = AyatanaLibrary.class.getResourceAsStream(sourceLibrary);
-							if (input == null)
-								throw new Exception("not library exists");
-							FileOutputStream fos = new FileOutputStream(targetLibrary);
-							byte buff[] = new byte[1024];
-							int read;
-							while ((read = input.read(buff)) > 0)
-								fos.write(buff, 0, read);
-							fos.flush();
-							fos.close();
-							input.close();
-						}
-					} else {
-						targetDirectory.mkdirs();
-						InputStream input = AyatanaLibrary.class.getResourceAsStream(sourceLibrary);
-						if (input == null)
-							throw new Exception("not library exists");
-						FileOutputStream fos = new FileOutputStream(targetLibrary);
-						byte buff[] = new byte[1024];
-						int read;
-						while ((read = input.read(buff)) > 0)
-							fos.write(buff, 0, read);
-						fos.flush();
-						fos.close();
-						input.close();
-					}
+					
+					URL source = AyatanaLibrary.class.getResource(sourceLibrary);
+					if (source == null)
+						throw new FileNotFoundException(sourceLibrary);
+					
+					// la librería solo se extrae si cambio respecto al registro
+					ResourceExtractor.extract(source, targetLibrary,
+							new LibraryTarget(source, sourceLibrary, stampFile));
 				}
 				try {
 					System.loadLibrary("awt");
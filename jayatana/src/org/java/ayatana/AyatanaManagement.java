@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.java.ayatana;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Implementación de la interface de administración, agrupa los contadores
+ * nativos de <code>org_java_ayatana_ApplicationMenu.c</code> y los contadores
+ * de java de todas las ventanas. Solo se registra si se define
+ * <code>jayatana.jmx=true</code>, el servidor de administración de la
+ * plataforma es costoso de crear al iniciar.
+ */
+final class AyatanaManagement implements AyatanaManagementMXBean {
+	/*
+	 * Contadores nativos, deben coincidir con org_java_ayatana_ApplicationMenu.c
+	 */
+	static final int COUNTER_MENUITEMS = 0;
+	static final int COUNTER_INSTANCES = 1;
+	static final int COUNTER_GLOBALREFS = 2;
+	static final int COUNTER_PATHS = 3;
+	static final int COUNTER_HANDLERS = 4;
+	static final int COUNTER_RECYCLED = 5;
+	
+	public static final String OBJECT_NAME = "org.java.ayatana:type=ApplicationMenu";
+	
+	/**
+	 * Registra la interface de administración en el servidor de la plataforma
+	 * si se define <code>jayatana.jmx=true</code>, si no es posible se ignora.
+	 */
+	static void register() {
+		if (!Boolean.getBoolean("jayatana.jmx"))
+			return;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(new AyatanaManagement(), name);
+		} catch (JMException e) {
+			// la administración es opcional
+		} catch (SecurityException e) {
+			// la administración es opcional
+		}
+	}
+	
+	@Override
+	public long getLiveMenuItems() {
+		return ApplicationMenu.getNativeCounter(COUNTER_MENUITEMS);
+	}
+	@Override
+	public long getNativeInstances() {
+		return ApplicationMenu.getNativeCounter(COUNTER_INSTANCES);
+	}
+	@Override
+	public long getGlobalRefs() {
+		return ApplicationMenu.getNativeCounter(COUNTER_GLOBALREFS);
+	}
+	@Override
+	public long getWindowPaths() {
+		return ApplicationMenu.getNativeCounter(COUNTER_PATHS);
+	}
+	@Override
+	public long getSignalHandlers() {
+		return ApplicationMenu.getNativeCounter(COUNTER_HANDLERS);
+	}
+	@Override
+	public long getRecycledMenuItems() {
+		return ApplicationMenu.getNativeCounter(COUNTER_RECYCLED);
+	}
+	@Override
+	public long getNativeBytesInUse() {
+		return ApplicationMenu.getNativeBytesInUse();
+	}
+	@Override
+	public Map<String, Integer> getWindowMenuItems() {
+		Map<String, Integer> items = new TreeMap<String, Integer>();
+		for (ApplicationMenu menu : ApplicationMenu.getInstances())
+			if (menu.getWindowXID() > -1)
+				items.put("0x"+Long.toHexString(menu.getWindowXID()), menu.getLiveMenuItemCount());
+		return items;
+	}
+	@Override
+	public int getWindows() {
+		return ApplicationMenu.getInstances().size();
+	}
+	@Override
+	public long getUpcallCount() {
+		return ApplicationMenu.getUpcallCount();
+	}
+	@Override
+	public long getUpcallTime() {
+		return ApplicationMenu.getUpcallTime();
+	}
+	@Override
+	public long getUpcallMaxTime() {
+		return ApplicationMenu.getUpcallMaxTime();
+	}
+	@Override
+	public long getSubmenuCacheHits() {
+		long hits = 0;
+		for (ApplicationMenu menu : ApplicationMenu.getInstances())
+			hits += menu.getSubmenuCache().getHitCount();
+		return hits;
+	}
+	@Override
+	public long getSubmenuCacheMisses() {
+		long misses = 0;
+		for (ApplicationMenu menu : ApplicationMenu.getInstances())
+			misses += menu.getSubmenuCache().getMissCount();
+		return misses;
+	}
+	@Override
+	public long getRebuildRequests() {
+		return RebuildScheduler.getInstance().getRequestedCount();
+	}
+	@Override
+	public long getRebuildMerged() {
+		return RebuildScheduler.getInstance().getMergedCount();
+	}
+	@Override
+	public long getRebuildExecuted() {
+		return RebuildScheduler.getInstance().getExecutedCount();
+	}
+	@Override
+	public long[] getDispatchHistogram() {
+		return GMainLoop.getDispatchHistogram();
+	}
+	@Override
+	public long getEventQueueDepth() {
+		return MenuEventRing.getInstance().getDepth();
+	}
+	@Override
+	public long getEventQueueMaxDepth() {
+		return MenuEventRing.getInstance().getMaxDepth();
+	}
+	@Override
+	public long getEventOverflows() {
+		return MenuEventRing.getInstance().getOverflowCount();
+	}
+	@Override
+	public long getEventDrains() {
+		return MenuEventRing.getInstance().getDrainCount();
+	}
+	@Override
+	public long getEventDrainLatency() {
+		return MenuEventRing.getInstance().getDrainLatency();
+	}
+	@Override
+	public long getEventDrainMaxLatency() {
+		return MenuEventRing.getInstance().getDrainMaxLatency();
+	}
+	@Override
+	public long getShutdownTime() {
+		return GMainLoop.getShutdownTime();
+	}
+}
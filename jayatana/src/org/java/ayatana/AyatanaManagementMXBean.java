@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.java.ayatana;
+
+import java.util.Map;
+
+/**
+ * Interface de administración de la integración con el menu de aplicaciones
+ * globales, publicada como <code>org.java.ayatana:type=ApplicationMenu</code>.
+ * Los tiempos se expresan en microsegundos.
+ */
+public interface AyatanaManagementMXBean {
+	/**
+	 * Menus nativos vivos, incluye las raíces de cada ventana
+	 * 
+	 * @return menus vivos
+	 */
+	long getLiveMenuItems();
+	/**
+	 * Estructuras nativas de ventana registradas
+	 * 
+	 * @return instancias nativas
+	 */
+	long getNativeInstances();
+	/**
+	 * Referencias globales JNI mantenidas por la librería
+	 * 
+	 * @return referencias globales
+	 */
+	long getGlobalRefs();
+	/**
+	 * Rutas de objeto D-Bus de ventanas reservadas
+	 * 
+	 * @return rutas reservadas
+	 */
+	long getWindowPaths();
+	/**
+	 * Manejadores de señales conectados a menus vivos
+	 * 
+	 * @return manejadores de señales
+	 */
+	long getSignalHandlers();
+	/**
+	 * Menus reutilizados al volver a exportar submenus
+	 * 
+	 * @return menus reutilizados
+	 */
+	long getRecycledMenuItems();
+	/**
+	 * Bytes nativos en uso por comandos pendientes y etiquetas
+	 * 
+	 * @return bytes en uso
+	 */
+	long getNativeBytesInUse();
+	/**
+	 * Menus vivos por ventana, la llave es el identificador X11 en hexadecimal
+	 * 
+	 * @return menus vivos por ventana
+	 */
+	Map<String, Integer> getWindowMenuItems();
+	/**
+	 * Ventanas con el menu de aplicaciones globales instalado
+	 * 
+	 * @return ventanas
+	 */
+	int getWindows();
+	/**
+	 * Invocaciones desde el hilo de GMainLoop a java
+	 * 
+	 * @return invocaciones
+	 */
+	long getUpcallCount();
+	/**
+	 * Tiempo acumulado de invocaciones a java
+	 * 
+	 * @return tiempo en microsegundos
+	 */
+	long getUpcallTime();
+	/**
+	 * Tiempo máximo de una invocación a java
+	 * 
+	 * @return tiempo en microsegundos
+	 */
+	long getUpcallMaxTime();
+	/**
+	 * Submenus mostrados sin volver a exportarse
+	 * 
+	 * @return aciertos del cache de submenus
+	 */
+	long getSubmenuCacheHits();
+	/**
+	 * Submenus exportados al mostrarse
+	 * 
+	 * @return fallos del cache de submenus
+	 */
+	long getSubmenuCacheMisses();
+	/**
+	 * Solicitudes de reconstrucción de barras de menus
+	 * 
+	 * @return solicitudes
+	 */
+	long getRebuildRequests();
+	/**
+	 * Solicitudes de reconstrucción agrupadas con una pendiente
+	 * 
+	 * @return solicitudes agrupadas
+	 */
+	long getRebuildMerged();
+	/**
+	 * Reconstrucciones de barras de menus ejecutadas
+	 * 
+	 * @return reconstrucciones
+	 */
+	long getRebuildExecuted();
+	/**
+	 * Histograma del tiempo de despacho por iteración del GMainLoop, la
+	 * casilla <code>i</code> cuenta las iteraciones que tardaron menos de
+	 * 2<sup>i+1</sup> microsegundos y la ultima el resto.
+	 * 
+	 * @return iteraciones por casilla
+	 */
+	long[] getDispatchHistogram();
+	/**
+	 * Eventos de menu pendientes de atender en el hilo de eventos de AWT
+	 * 
+	 * @return eventos pendientes
+	 */
+	long getEventQueueDepth();
+	/**
+	 * Cantidad máxima de eventos de menu pendientes observada
+	 * 
+	 * @return eventos pendientes
+	 */
+	long getEventQueueMaxDepth();
+	/**
+	 * Eventos de menu que no cupieron en la cola circular y se atendieron
+	 * desde la cola de desborde
+	 * 
+	 * @return eventos desbordados
+	 */
+	long getEventOverflows();
+	/**
+	 * Tareas del hilo de eventos de AWT que atendieron eventos de menu
+	 * 
+	 * @return tareas de atención
+	 */
+	long getEventDrains();
+	/**
+	 * Espera acumulada del evento de menu más antiguo de cada atención, en
+	 * microsegundos
+	 * 
+	 * @return microsegundos
+	 */
+	long getEventDrainLatency();
+	/**
+	 * Espera máxima del evento de menu más antiguo de una atención, en
+	 * microsegundos
+	 * 
+	 * @return microsegundos
+	 */
+	long getEventDrainMaxLatency();
+	/**
+	 * Tiempo que tardó en detenerse el GMainLoop
+	 * 
+	 * @return milisegundos o <code>-1</code> si no se ha detenido
+	 */
+	long getShutdownTime();
+}
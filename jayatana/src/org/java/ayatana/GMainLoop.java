@@ -26,33 +26,83 @@
 
 package org.java.ayatana;
 
+import java.util.concurrent.TimeUnit;
+
 /**
- * Esta clase permite iniciar un GMainLoop
+ * Esta clase permite iniciar un GMainLoop. El hilo de GMainLoop se inicia
+ * una sola vez, al detenerse atiende primero los comandos y eventos
+ * pendientes y se puede esperar con tiempo límite.
+ * 
  * @author Jared González
  */
 class GMainLoop {
 	private static boolean running = false;
+	private static boolean stopped = false;
+	private static volatile long shutdownTime = -1;
 	
 	native private static void runGMainLoop();
 	native private static void quitGMainLoop();
+	native private static boolean joinGMainLoop(long timeout);
+	/**
+	 * Histograma del tiempo de despacho por iteración del GMainLoop, la
+	 * casilla <code>i</code> cuenta las iteraciones que tardaron menos de
+	 * 2<sup>i+1</sup> microsegundos y la ultima el resto.
+	 * 
+	 * @return iteraciones por casilla
+	 */
+	native static long[] getDispatchHistogram();
 	
 	/**
 	 * Inicia un GMainLoop
 	 */
-	public synchronized static void run() {
-		if (!running) {
+	public synchronized static void start() {
+		if (!running && !stopped) {
 			runGMainLoop();
-			
-			Thread threadQuit = new Thread() {
-				@Override
-				public void run() {
-					quitGMainLoop();
-				}
-			};
-			threadQuit.setDaemon(true);
-			Runtime.getRuntime().addShutdownHook(threadQuit);
-			
 			running = true;
 		}
 	}
+	/**
+	 * Solicita detener el GMainLoop, termina después de atender los comandos
+	 * y eventos pendientes.
+	 */
+	public synchronized static void stop() {
+		if (running) {
+			quitGMainLoop();
+			running = false;
+			stopped = true;
+		}
+	}
+	/**
+	 * Espera a que termine el hilo de GMainLoop
+	 * 
+	 * @param timeout tiempo máximo de espera en milisegundos
+	 * @return <code>True</code> si el hilo terminó o nunca se inició
+	 */
+	public synchronized static boolean join(long timeout) {
+		if (!stopped)
+			return !running;
+		return joinGMainLoop(timeout);
+	}
+	/**
+	 * Detiene el GMainLoop y espera a que termine, registra el tiempo que
+	 * tardó en <code>getShutdownTime</code>.
+	 * 
+	 * @param timeout tiempo máximo de espera en milisegundos
+	 * @return <code>True</code> si el hilo terminó a tiempo
+	 */
+	public synchronized static boolean shutdown(long timeout) {
+		long start = System.nanoTime();
+		stop();
+		boolean result = join(timeout);
+		shutdownTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		return result;
+	}
+	/**
+	 * Tiempo que tardó en detenerse el GMainLoop
+	 * 
+	 * @return milisegundos o <code>-1</code> si no se ha detenido
+	 */
+	public static long getShutdownTime() {
+		return shutdownTime;
+	}
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Buffer directo con los menus hijos de un submenu, permite exportar
+ * todos los menus en una sola invocación nativa.
+ * 
+ * Cada menu se codifica en orden nativo como: tipo (byte), banderas (byte),
+ * identificador (int), modificador (int), codigo de tecla (int), longitud
+ * de etiqueta (int) y la etiqueta en UTF-8. El formato debe coincidir con
+ * <code>org_java_ayatana_ApplicationMenu.c</code>.
+ */
+final class MenuBuffer {
+	public static final byte TYPE_ITEM = 0;
+	public static final byte TYPE_MENU = 1;
+	public static final byte TYPE_RADIO = 2;
+	public static final byte TYPE_CHECK = 3;
+	public static final byte TYPE_SEPARATOR = 4;
+
+	private static final byte FLAG_ENABLED = 1 << 0;
+	private static final byte FLAG_SELECTED = 1 << 1;
+
+	private static final int HEADER_SIZE = 18;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private ByteBuffer buffer = allocate(4096);
+	private int count = 0;
+
+	/**
+	 * Crea un buffer directo en el orden de bytes nativo
+	 * 
+	 * @param capacity capacidad
+	 * @return buffer
+	 */
+	private static ByteBuffer allocate(int capacity) {
+		return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Codifica una etiqueta en UTF-8 estándar, el formato que espera GLib.
+	 * El UTF-8 modificado de JNI no es válido para GVariant.
+	 * 
+	 * @param label etiqueta o <code>null</code>
+	 * @return bytes de la etiqueta sin terminador
+	 */
+	public static byte[] encodeLabel(String label) {
+		return label == null ? new byte[0] : label.getBytes(UTF8);
+	}
+	/**
+	 * Limpia el buffer para reutilizarlo
+	 */
+	public void clear() {
+		buffer.clear();
+		count = 0;
+	}
+	/**
+	 * Agrega un menu al buffer
+	 * 
+	 * @param type tipo de menu
+	 * @param id identificador de menu
+	 * @param label etiqueta
+	 * @param enabled habilitado
+	 * @param selected estado de selección
+	 * @param modifiers modificador de acelerador
+	 * @param keycode codigo de accelerador
+	 */
+	public void add(byte type, int id, String label, boolean enabled, boolean selected,
+			int modifiers, int keycode) {
+		byte[] bytes = encodeLabel(label);
+		ensureCapacity(HEADER_SIZE + bytes.length);
+		byte flags = 0;
+		if (enabled)
+			flags |= FLAG_ENABLED;
+		if (selected)
+			flags |= FLAG_SELECTED;
+		buffer.put(type);
+		buffer.put(flags);
+		buffer.putInt(id);
+		buffer.putInt(modifiers);
+		buffer.putInt(keycode);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+		count++;
+	}
+	/**
+	 * Agrega un separador al buffer
+	 */
+	public void addSeparator() {
+		add(TYPE_SEPARATOR, 0, null, true, false, -1, -1);
+	}
+	/**
+	 * Asegura la capacidad del buffer, si no es suficiente se duplica
+	 * 
+	 * @param required bytes requeridos
+	 */
+	private void ensureCapacity(int required) {
+		if (buffer.remaining() < required) {
+			int capacity = buffer.capacity();
+			while (capacity - buffer.position() < required)
+				capacity *= 2;
+			ByteBuffer newbuffer = allocate(capacity);
+			buffer.flip();
+			newbuffer.put(buffer);
+			buffer = newbuffer;
+		}
+	}
+
+	/**
+	 * Obtiene el buffer directo
+	 * 
+	 * @return buffer
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+	/**
+	 * Cantidad de bytes escritos
+	 * 
+	 * @return bytes escritos
+	 */
+	public int getLength() {
+		return buffer.position();
+	}
+	/**
+	 * Cantidad de menus escritos
+	 * 
+	 * @return cantidad de menus
+	 */
+	public int size() {
+		return count;
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import java.awt.EventQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cola circular acotada de eventos de menu entre el hilo de GMainLoop
+ * (único productor) y el hilo de eventos de AWT (único consumidor). El hilo
+ * de eventos de AWT atiende todos los eventos pendientes en una sola tarea
+ * en lugar de una tarea por evento. La capacidad se define con
+ * <code>jayatana.events.capacity</code> (256), si la cola se llena los
+ * eventos nuevos pasan a una cola de desborde sin límite que se atiende
+ * después de la cola circular, ningún evento se pierde y se conserva el
+ * orden.
+ */
+final class MenuEventRing {
+	/**
+	 * Destino de los eventos de menu
+	 */
+	interface Target {
+		/**
+		 * Atiende un evento de menu, se ejecuta en el hilo de eventos de AWT.
+		 * 
+		 * @param type tipo de evento
+		 * @param id identificador de menu
+		 * @param token número de secuencia de la apertura que se cierra
+		 */
+		void handleMenuEvent(int type, int id, long token);
+	}
+	
+	/**
+	 * Evento que no cupo en la cola circular
+	 */
+	private static class Overflow {
+		private final Target target;
+		private final int type;
+		private final int id;
+		private final long token;
+		
+		public Overflow(Target target, int type, int id, long token) {
+			this.target = target;
+			this.type = type;
+			this.id = id;
+			this.token = token;
+		}
+	}
+	
+	/**
+	 * Activación de un menu
+	 */
+	static final int ACTIVATED = 0;
+	/**
+	 * Un submenu se ocultó
+	 */
+	static final int AFTER_SHOW = 1;
+	
+	private static MenuEventRing instance;
+	
+	/**
+	 * Obtiene la cola compartida
+	 * 
+	 * @return cola de eventos
+	 */
+	public synchronized static MenuEventRing getInstance() {
+		if (instance == null)
+			instance = new MenuEventRing(Integer.getInteger("jayatana.events.capacity", 256));
+		return instance;
+	}
+	
+	private final int mask;
+	private final Target[] targets;
+	private final int[] types;
+	private final int[] ids;
+	private final long[] tokens;
+	private final long[] times;
+	// head solo lo escribe el consumidor y tail solo el productor
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicLong maxDepth = new AtomicLong();
+	// solo el productor agrega y solo el consumidor retira
+	private final Queue<Overflow> overflow = new ConcurrentLinkedQueue<Overflow>();
+	private final AtomicLong overflows = new AtomicLong();
+	private final AtomicLong drains = new AtomicLong();
+	private final AtomicLong drainLatency = new AtomicLong();
+	private final AtomicLong drainMaxLatency = new AtomicLong();
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+	
+	/**
+	 * Crea una cola
+	 * 
+	 * @param capacity capacidad, se redondea a la siguiente potencia de 2
+	 */
+	MenuEventRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		mask = size - 1;
+		targets = new Target[size];
+		types = new int[size];
+		ids = new int[size];
+		tokens = new long[size];
+		times = new long[size];
+	}
+	
+	/**
+	 * Agrega un evento y programa su atención en el hilo de eventos de AWT,
+	 * solo debe invocarse desde el hilo de GMainLoop.
+	 * 
+	 * @param target menu de aplicaciones destino
+	 * @param type tipo de evento
+	 * @param id identificador de menu
+	 * @param token número de secuencia de la apertura que se cierra o 0
+	 * @return <code>False</code> si la cola estaba llena y el evento pasó a
+	 * la cola de desborde
+	 */
+	public boolean offer(Target target, int type, int id, long token) {
+		long t = tail.get();
+		long depth = t - head.get();
+		// mientras haya desborde pendiente los eventos nuevos van detrás
+		if (depth > mask || !overflow.isEmpty()) {
+			overflow.add(new Overflow(target, type, id, token));
+			overflows.incrementAndGet();
+			schedule();
+			return false;
+		}
+		int index = (int)t & mask;
+		targets[index] = target;
+		types[index] = type;
+		ids[index] = id;
+		tokens[index] = token;
+		times[index] = System.nanoTime();
+		// publica la casilla al consumidor
+		tail.lazySet(t + 1);
+		if (depth + 1 > maxDepth.get())
+			maxDepth.set(depth + 1);
+		schedule();
+		return true;
+	}
+	/**
+	 * Programa la atención de la cola si no está programada
+	 */
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true))
+			EventQueue.invokeLater(drainTask);
+	}
+	/**
+	 * Atiende todos los eventos pendientes, se ejecuta en el hilo de eventos
+	 * de AWT.
+	 */
+	private void drain() {
+		// los eventos agregados después se atienden aquí o en otra tarea
+		scheduled.set(false);
+		long h = head.get();
+		long t = tail.get();
+		if (h != t) {
+			long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - times[(int)h & mask]);
+			drains.incrementAndGet();
+			drainLatency.addAndGet(latency);
+			if (latency > drainMaxLatency.get())
+				drainMaxLatency.set(latency);
+		}
+		while (true) {
+			for (; h != t; h++) {
+				int index = (int)h & mask;
+				Target target = targets[index];
+				int type = types[index];
+				int id = ids[index];
+				long token = tokens[index];
+				targets[index] = null;
+				// libera la casilla al productor antes de atender el evento
+				head.lazySet(h + 1);
+				dispatch(target, type, id, token);
+			}
+			Overflow event = overflow.peek();
+			if (event == null)
+				return;
+			// un evento desbordado solo se atiende con la cola circular vacía,
+			// los eventos publicados antes que él ya se atendieron
+			t = tail.get();
+			if (h != t)
+				continue;
+			overflow.poll();
+			dispatch(event.target, event.type, event.id, event.token);
+		}
+	}
+	/**
+	 * Atiende un evento sin interrumpir la atención de los siguientes
+	 */
+	private static void dispatch(Target target, int type, int id, long token) {
+		try {
+			target.handleMenuEvent(type, id, token);
+		} catch (RuntimeException e) {
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+	
+	/**
+	 * Cantidad de eventos pendientes
+	 * 
+	 * @return eventos pendientes
+	 */
+	public long getDepth() {
+		return tail.get() - head.get() + overflow.size();
+	}
+	/**
+	 * Cantidad máxima de eventos pendientes observada
+	 * 
+	 * @return eventos pendientes
+	 */
+	public long getMaxDepth() {
+		return maxDepth.get();
+	}
+	/**
+	 * Cantidad de eventos que no cupieron en la cola circular
+	 * 
+	 * @return eventos desbordados
+	 */
+	public long getOverflowCount() {
+		return overflows.get();
+	}
+	/**
+	 * Cantidad de tareas de atención que encontraron eventos pendientes
+	 * 
+	 * @return tareas de atención
+	 */
+	public long getDrainCount() {
+		return drains.get();
+	}
+	/**
+	 * Espera acumulada del evento más antiguo de cada atención, en
+	 * microsegundos
+	 * 
+	 * @return microsegundos
+	 */
+	public long getDrainLatency() {
+		return drainLatency.get();
+	}
+	/**
+	 * Espera máxima del evento más antiguo de una atención, en microsegundos
+	 * 
+	 * @return microsegundos
+	 */
+	public long getDrainMaxLatency() {
+		return drainMaxLatency.get();
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.swing.JMenuItem;
+
+/**
+ * Registro de identificadores de menus exportados al menu global, asigna
+ * un identificador estable a cada menu y lo resuelve en tiempo constante.
+ * Los menus se mantienen con referencias débiles para no retener menus
+ * eliminados de la barra.
+ */
+final class MenuItemRegistry {
+	/**
+	 * Referencia débil al menu con su identificador
+	 */
+	private static class ItemReference extends WeakReference<JMenuItem> {
+		private final int id;
+
+		public ItemReference(JMenuItem menuitem, int id, ReferenceQueue<JMenuItem> queue) {
+			super(menuitem, queue);
+			this.id = id;
+		}
+	}
+
+	private final Map<Integer, ItemReference> items = new HashMap<Integer, ItemReference>();
+	private final Map<JMenuItem, Integer> ids = new WeakHashMap<JMenuItem, Integer>();
+	private final ReferenceQueue<JMenuItem> queue = new ReferenceQueue<JMenuItem>();
+	private int nextId = 1;
+
+	/**
+	 * Obtiene el identificador del menu, si no esta registrado se le asigna
+	 * uno nuevo.
+	 * 
+	 * @param menuitem menu
+	 * @return identificador de menu
+	 */
+	public synchronized int register(JMenuItem menuitem) {
+		expunge();
+		Integer id = ids.get(menuitem);
+		if (id == null) {
+			do {
+				id = nextId++;
+				if (nextId <= 0)
+					nextId = 1;
+			} while (items.containsKey(id));
+			ids.put(menuitem, id);
+			items.put(id, new ItemReference(menuitem, id, queue));
+		}
+		return id;
+	}
+	/**
+	 * Obtiene el menu del identificador
+	 * 
+	 * @param id identificador de menu
+	 * @return menu o <code>null</code> si no existe
+	 */
+	public synchronized JMenuItem get(int id) {
+		expunge();
+		ItemReference reference = items.get(id);
+		if (reference == null)
+			return null;
+		return reference.get();
+	}
+	/**
+	 * Cantidad de menus registrados
+	 * 
+	 * @return cantidad de menus
+	 */
+	public synchronized int size() {
+		expunge();
+		return items.size();
+	}
+	/**
+	 * Elimina los menus que ya fueron recolectados
+	 */
+	private void expunge() {
+		ItemReference reference;
+		while ((reference = (ItemReference)queue.poll()) != null)
+			if (items.get(reference.id) == reference)
+				items.remove(reference.id);
+	}
+}
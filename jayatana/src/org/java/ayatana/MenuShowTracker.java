@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Empareja las acciones de mostrar y ocultar de cada submenu. El hilo de
+ * GMainLoop asigna un número de secuencia a cada apertura y el evento de
+ * ocultar lleva el número de la apertura que cierra, así el hilo de eventos
+ * de AWT descarta una selección que llega después de su deselección (por
+ * ejemplo si <code>AsyncExtraMenuAction</code> tarda en preparar el
+ * contenido) en lugar de dejar el submenu seleccionado.
+ */
+final class MenuShowTracker {
+	private long sequence = 0;
+	// última apertura de cada submenu, pendiente de cerrarse
+	private final Map<Integer, Long> opened = new HashMap<Integer, Long>();
+	// aperturas cuya selección aún no se ejecuta
+	private final Map<Integer, Long> pending = new HashMap<Integer, Long>();
+	// aperturas cuya selección ya se ejecutó
+	private final Map<Integer, Long> selected = new HashMap<Integer, Long>();
+	
+	/**
+	 * Registra la apertura de un submenu, se invoca desde el hilo de
+	 * GMainLoop antes de programar la selección. Una selección pendiente
+	 * anterior del mismo submenu queda descartada.
+	 * 
+	 * @param id identificador de menu
+	 * @return número de secuencia de la apertura
+	 */
+	public synchronized long open(int id) {
+		long token = ++sequence;
+		opened.put(id, token);
+		pending.put(id, token);
+		return token;
+	}
+	/**
+	 * Registra el cierre de un submenu, se invoca desde el hilo de GMainLoop.
+	 * 
+	 * @param id identificador de menu
+	 * @return número de secuencia de la apertura que se cierra o 0 si el
+	 * submenu no estaba abierto
+	 */
+	public synchronized long close(int id) {
+		Long token = opened.remove(id);
+		return token == null ? 0 : token;
+	}
+	/**
+	 * Indica si se debe ejecutar la selección de una apertura, se invoca
+	 * desde el hilo de eventos de AWT.
+	 * 
+	 * @param id identificador de menu
+	 * @param token número de secuencia de la apertura
+	 * @return <code>False</code> si la apertura ya se cerró o fue reemplazada
+	 */
+	public synchronized boolean select(int id, long token) {
+		Long current = pending.get(id);
+		if (current == null || current != token)
+			return false;
+		pending.remove(id);
+		selected.put(id, token);
+		return true;
+	}
+	/**
+	 * Indica si se debe ejecutar la deselección de una apertura, se invoca
+	 * desde el hilo de eventos de AWT. Si la selección aún no se ejecutó se
+	 * cancela y no se deselecciona.
+	 * 
+	 * @param id identificador de menu
+	 * @param token número de secuencia de la apertura
+	 * @return <code>True</code> si la selección de la apertura se ejecutó
+	 */
+	public synchronized boolean deselect(int id, long token) {
+		Long current = pending.get(id);
+		if (current != null && current == token) {
+			pending.remove(id);
+			return false;
+		}
+		current = selected.get(id);
+		if (current == null || current != token)
+			return false;
+		selected.remove(id);
+		return true;
+	}
+}
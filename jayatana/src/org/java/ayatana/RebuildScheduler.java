@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import java.awt.EventQueue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Planificador compartido para reconstrucción de barras de menus. Agrupa las
+ * solicitudes de una misma ventana hasta que pase un periodo sin cambios
+ * (<code>jayatana.rebuild.quietPeriod</code>, 500 ms) o se alcance la latencia
+ * máxima (<code>jayatana.rebuild.maxLatency</code>, 2000 ms), y entonces
+ * ejecuta la reconstrucción en el hilo de eventos de AWT.
+ */
+final class RebuildScheduler {
+	/**
+	 * Solicitud pendiente de una ventana
+	 */
+	private static class Pending {
+		private final long firstRequest;
+		private long lastRequest;
+		private Runnable task;
+
+		public Pending(long now, Runnable task) {
+			this.firstRequest = now;
+			this.lastRequest = now;
+			this.task = task;
+		}
+	}
+
+	private static RebuildScheduler instance;
+
+	/**
+	 * Obtiene el planificador compartido
+	 * 
+	 * @return planificador
+	 */
+	public synchronized static RebuildScheduler getInstance() {
+		if (instance == null)
+			instance = new RebuildScheduler(
+					Long.getLong("jayatana.rebuild.quietPeriod", 500),
+					Long.getLong("jayatana.rebuild.maxLatency", 2000));
+		return instance;
+	}
+
+	private final long quietPeriod;
+	private final long maxLatency;
+	private final ScheduledExecutorService executor;
+	private final Map<Object, Pending> pendings = new HashMap<Object, Pending>();
+	private final AtomicLong requested = new AtomicLong();
+	private final AtomicLong merged = new AtomicLong();
+	private final AtomicLong executed = new AtomicLong();
+
+	/**
+	 * Crea un planificador
+	 * 
+	 * @param quietPeriod milisegundos sin solicitudes para ejecutar
+	 * @param maxLatency milisegundos máximos desde la primera solicitud
+	 */
+	private RebuildScheduler(long quietPeriod, long maxLatency) {
+		this.quietPeriod = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+		this.maxLatency = TimeUnit.MILLISECONDS.toNanos(Math.max(quietPeriod, maxLatency));
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "jayatana-rebuild");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Solicita una reconstrucción, si existe una solicitud pendiente con la
+	 * misma llave se agrupan en una sola ejecución.
+	 * 
+	 * @param key llave de agrupación, normalmente la ventana
+	 * @param task tarea a ejecutar en el hilo de eventos de AWT
+	 */
+	public synchronized void schedule(final Object key, Runnable task) {
+		requested.incrementAndGet();
+		long now = System.nanoTime();
+		Pending pending = pendings.get(key);
+		if (pending != null) {
+			merged.incrementAndGet();
+			pending.lastRequest = now;
+			pending.task = task;
+		} else {
+			pendings.put(key, new Pending(now, task));
+			check(key, quietPeriod);
+		}
+	}
+	/**
+	 * Cancela la solicitud pendiente, la revisión programada ya no la
+	 * encuentra y no se ejecuta.
+	 * 
+	 * @param key llave de agrupación
+	 */
+	public synchronized void cancel(Object key) {
+		pendings.remove(key);
+	}
+	/**
+	 * Programa la revisión de una solicitud pendiente
+	 * 
+	 * @param key llave de agrupación
+	 * @param delay retardo en nanosegundos
+	 */
+	private void check(final Object key, long delay) {
+		executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				fire(key);
+			}
+		}, delay, TimeUnit.NANOSECONDS);
+	}
+	/**
+	 * Ejecuta la solicitud pendiente si ya paso el periodo sin cambios o
+	 * la latencia máxima, de lo contrario la vuelve a programar.
+	 * 
+	 * @param key llave de agrupación
+	 */
+	private synchronized void fire(Object key) {
+		Pending pending = pendings.get(key);
+		if (pending == null)
+			return;
+		long now = System.nanoTime();
+		long deadline = Math.min(pending.lastRequest + quietPeriod, pending.firstRequest + maxLatency);
+		if (deadline - now > 0) {
+			check(key, deadline - now);
+		} else {
+			pendings.remove(key);
+			executed.incrementAndGet();
+			EventQueue.invokeLater(pending.task);
+		}
+	}
+
+	/**
+	 * Cantidad de solicitudes recibidas
+	 * 
+	 * @return solicitudes
+	 */
+	public long getRequestedCount() {
+		return requested.get();
+	}
+	/**
+	 * Cantidad de solicitudes agrupadas con una pendiente
+	 * 
+	 * @return solicitudes agrupadas
+	 */
+	public long getMergedCount() {
+		return merged.get();
+	}
+	/**
+	 * Cantidad de reconstrucciones ejecutadas
+	 * 
+	 * @return reconstrucciones
+	 */
+	public long getExecutedCount() {
+		return executed.get();
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Extracción de recursos a archivos locales. El recurso se copia con canales
+ * a un archivo temporal en el mismo directorio y se renombra al destino, de
+ * modo que nunca se observa un archivo a medio escribir. Un bloqueo sobre el
+ * archivo <code>~/.java/jayatana/extract.lock</code> evita que varias JVM
+ * extraigan recursos a la vez, las demás esperan hasta <code>jayatana.extract.timeout</code>
+ * (2000 ms) y usan el archivo ya extraído.
+ */
+final class ResourceExtractor {
+	/**
+	 * Control de vigencia del archivo extraído
+	 */
+	interface Target {
+		/**
+		 * Indica si el archivo destino ya corresponde al recurso
+		 * 
+		 * @param file archivo destino
+		 * @return <code>True</code> si no es necesario extraerlo
+		 */
+		boolean isCurrent(File file);
+		/**
+		 * Es lanzado después de extraer el archivo y antes de liberar el
+		 * bloqueo
+		 * 
+		 * @param file archivo destino
+		 * @throws IOException 
+		 */
+		void extracted(File file) throws IOException;
+	}
+	
+	private static final long lockTimeout = Long.getLong("jayatana.extract.timeout", 2000);
+	/**
+	 * Intentos de reemplazar el archivo destino con el archivo temporal
+	 */
+	private static final int renameAttempts = 5;
+	
+	private ResourceExtractor() {}
+	
+	/**
+	 * Extrae el recurso si el archivo destino no está vigente
+	 * 
+	 * @param source recurso
+	 * @param file archivo destino
+	 * @param target control de vigencia
+	 * @return <code>True</code> si se extrajo el recurso
+	 * @throws IOException 
+	 */
+	public static boolean extract(URL source, File file, Target target) throws IOException {
+		if (target.isCurrent(file))
+			return false;
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		// un único archivo de bloqueo compartido, no se deja en el directorio destino
+		File lockDirectory = new File(System.getProperty("user.home"), ".java/jayatana");
+		lockDirectory.mkdirs();
+		RandomAccessFile lockFile = new RandomAccessFile(new File(lockDirectory, "extract.lock"), "rw");
+		try {
+			FileLock lock = acquire(lockFile.getChannel());
+			try {
+				// otra JVM pudo extraerlo mientras se esperaba el bloqueo
+				if (target.isCurrent(file))
+					return false;
+				copy(source, file);
+				target.extracted(file);
+				return true;
+			} finally {
+				if (lock != null)
+					lock.release();
+			}
+		} finally {
+			lockFile.close();
+		}
+	}
+	/**
+	 * Obtiene el bloqueo exclusivo esperando como máximo
+	 * <code>jayatana.extract.timeout</code> milisegundos
+	 * 
+	 * @param channel canal del archivo de bloqueo
+	 * @return bloqueo o <code>null</code> si no se obtuvo a tiempo, el
+	 * reemplazo atómico permite continuar sin bloqueo
+	 * @throws IOException 
+	 */
+	private static FileLock acquire(FileChannel channel) throws IOException {
+		long deadline = System.currentTimeMillis() + lockTimeout;
+		while (true) {
+			try {
+				FileLock lock = channel.tryLock();
+				if (lock != null)
+					return lock;
+			} catch (OverlappingFileLockException e) {
+				// otro hilo de esta JVM lo esta extrayendo
+			}
+			if (System.currentTimeMillis() >= deadline)
+				return null;
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+	}
+	/**
+	 * Copia el recurso a un archivo temporal del mismo directorio y lo
+	 * renombra al destino
+	 * 
+	 * @param source recurso
+	 * @param file archivo destino
+	 * @throws IOException 
+	 */
+	private static void copy(URL source, File file) throws IOException {
+		File temp = File.createTempFile(file.getName()+".", ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			InputStream input = source.openStream();
+			try {
+				ReadableByteChannel in = Channels.newChannel(input);
+				FileOutputStream fos = new FileOutputStream(temp);
+				try {
+					FileChannel out = fos.getChannel();
+					long position = 0;
+					long transferred;
+					while ((transferred = out.transferFrom(in, position, Long.MAX_VALUE - position)) > 0)
+						position += transferred;
+					// el contenido debe estar en disco antes de renombrar
+					out.force(true);
+				} finally {
+					fos.close();
+				}
+			} finally {
+				input.close();
+			}
+			temp.setReadable(true, false);
+			rename(temp, file);
+		} finally {
+			temp.delete();
+		}
+	}
+	/**
+	 * Reemplaza el archivo destino con el archivo temporal. El destino nunca
+	 * se elimina antes de renombrar, si el reemplazo falla (por ejemplo si
+	 * otro proceso tiene abierto el destino) se reintenta.
+	 * 
+	 * @param temp archivo temporal
+	 * @param file archivo destino
+	 * @throws IOException si no se pudo reemplazar
+	 */
+	private static void rename(File temp, File file) throws IOException {
+		for (int attempt = 1; !temp.renameTo(file); attempt++) {
+			if (attempt == renameAttempts)
+				throw new IOException("unable to rename "+temp+" to "+file);
+			try {
+				Thread.sleep(10 * attempt);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted renaming "+temp+" to "+file);
+			}
+		}
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import java.awt.Component;
+import java.awt.event.ComponentEvent;
+import java.awt.event.ComponentListener;
+import java.awt.event.ContainerEvent;
+import java.awt.event.ContainerListener;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.AbstractButton;
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
+
+/**
+ * Cache de submenus exportados al menu de aplicaciones globales. Un submenu
+ * es valido mientras no cambie la estructura de su menu emergente, en cuyo
+ * caso no es necesario volver a exportarlo al mostrarse. Los cambios de
+ * etiqueta, habilitado, selección y acelerador de los menus hijos se
+ * propagan individualmente sin invalidar el submenu.
+ * 
+ * Solo debe usarse desde el hilo de eventos de AWT.
+ */
+final class SubmenuCache implements ContainerListener, PropertyChangeListener,
+		ComponentListener, ItemListener {
+	/**
+	 * Receptor de actualizaciones individuales de menus exportados
+	 */
+	interface ItemUpdater {
+		/**
+		 * Propaga el cambio de una propiedad de un menu exportado
+		 * 
+		 * @param menuitem menu
+		 * @param property nombre de propiedad: <code>text</code>,
+		 * <code>enabled</code>, <code>selected</code> o <code>accelerator</code>
+		 */
+		void updateItem(JMenuItem menuitem, String property);
+	}
+	
+	private final ItemUpdater updater;
+	private final Map<JMenu, List<Component>> entries = new HashMap<JMenu, List<Component>>();
+	private final Map<Component, JMenu> parents = new HashMap<Component, JMenu>();
+	// submenus hijos publicados en el último reemplazo de cada submenu,
+	// siguen vivos en el menu nativo aunque el submenu padre no esté vigente
+	private final Map<JMenu, Set<JMenu>> exportedChildren = new HashMap<JMenu, Set<JMenu>>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Crea el cache de submenus
+	 * 
+	 * @param updater receptor de actualizaciones individuales
+	 */
+	public SubmenuCache(ItemUpdater updater) {
+		this.updater = updater;
+	}
+
+	/**
+	 * Indica si el submenu exportado sigue vigente
+	 * 
+	 * @param menu submenu
+	 * @return <code>True</code> si no es necesario volver a exportarlo
+	 */
+	public boolean lookup(JMenu menu) {
+		if (entries.containsKey(menu)) {
+			hits.incrementAndGet();
+			return true;
+		} else {
+			misses.incrementAndGet();
+			return false;
+		}
+	}
+	/**
+	 * Indica si el submenu exportado sigue vigente sin contabilizar la consulta
+	 * 
+	 * @param menu submenu
+	 * @return <code>True</code> si no es necesario volver a exportarlo
+	 */
+	public boolean contains(JMenu menu) {
+		return entries.containsKey(menu);
+	}
+	/**
+	 * Registra un submenu exportado. El reemplazo nativo conserva los
+	 * submenus hijos con el mismo identificador junto con sus hijos, solo
+	 * los submenus hijos que ya no se publican dejan de ser validos.
+	 * 
+	 * @param menu submenu
+	 * @param menus submenus hijos publicados en el reemplazo
+	 */
+	public void exported(JMenu menu, Set<JMenu> menus) {
+		invalidate(menu);
+		Set<JMenu> previous = exportedChildren.put(menu, menus);
+		if (previous != null)
+			for (JMenu child : previous)
+				if (!menus.contains(child))
+					removed(child);
+		JPopupMenu popupMenu = menu.getPopupMenu();
+		List<Component> children = new ArrayList<Component>();
+		popupMenu.addContainerListener(this);
+		for (Component comp : popupMenu.getComponents()) {
+			comp.addComponentListener(this);
+			comp.addPropertyChangeListener(this);
+			if (comp instanceof AbstractButton)
+				((AbstractButton)comp).addItemListener(this);
+			parents.put(comp, menu);
+			children.add(comp);
+		}
+		entries.put(menu, children);
+	}
+	/**
+	 * Invalida el submenu, sus submenus hijos siguen vigentes mientras el
+	 * reemplazo nativo los conserve
+	 * 
+	 * @param menu submenu
+	 */
+	public void invalidate(JMenu menu) {
+		List<Component> children = entries.remove(menu);
+		if (children == null)
+			return;
+		menu.getPopupMenu().removeContainerListener(this);
+		for (Component comp : children) {
+			comp.removeComponentListener(this);
+			comp.removePropertyChangeListener(this);
+			if (comp instanceof AbstractButton)
+				((AbstractButton)comp).removeItemListener(this);
+			if (parents.get(comp) == menu)
+				parents.remove(comp);
+		}
+	}
+	/**
+	 * Invalida el submenu y sus submenus hijos cuando sus menus nativos
+	 * fueron destruidos
+	 * 
+	 * @param menu submenu
+	 */
+	public void removed(JMenu menu) {
+		invalidate(menu);
+		Set<JMenu> children = exportedChildren.remove(menu);
+		if (children != null)
+			for (JMenu child : children)
+				removed(child);
+	}
+	/**
+	 * Invalida todos los submenus
+	 */
+	public void clear() {
+		for (JMenu menu : new ArrayList<JMenu>(entries.keySet()))
+			invalidate(menu);
+		exportedChildren.clear();
+	}
+
+	/**
+	 * Invalida el submenu padre del componente
+	 * 
+	 * @param comp componente hijo
+	 */
+	private void invalidateParent(Object comp) {
+		JMenu menu = parents.get(comp);
+		if (menu != null)
+			invalidate(menu);
+	}
+
+	/**
+	 * Cantidad de submenus que no fue necesario volver a exportar
+	 * 
+	 * @return aciertos
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	/**
+	 * Cantidad de submenus que fue necesario exportar
+	 * 
+	 * @return fallos
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public void componentAdded(ContainerEvent e) {
+		if (e.getContainer() instanceof JPopupMenu &&
+				((JPopupMenu)e.getContainer()).getInvoker() instanceof JMenu)
+			invalidate((JMenu)((JPopupMenu)e.getContainer()).getInvoker());
+	}
+	@Override
+	public void componentRemoved(ContainerEvent e) {
+		invalidateParent(e.getChild());
+		componentAdded(e);
+	}
+	/**
+	 * Propaga el cambio de una propiedad si el menu pertenece a un submenu
+	 * vigente
+	 * 
+	 * @param source menu
+	 * @param property nombre de propiedad
+	 */
+	private void updateItem(Object source, String property) {
+		if (source instanceof JMenuItem && parents.containsKey(source))
+			updater.updateItem((JMenuItem)source, property);
+	}
+	
+	@Override
+	public void propertyChange(PropertyChangeEvent evt) {
+		String name = evt.getPropertyName();
+		if ("text".equals(name)) {
+			// los menus sin etiqueta no se exportan
+			if (isEmpty(evt.getOldValue()) || isEmpty(evt.getNewValue()))
+				invalidateParent(evt.getSource());
+			else
+				updateItem(evt.getSource(), name);
+		} else if ("enabled".equals(name) || "accelerator".equals(name)) {
+			updateItem(evt.getSource(), name);
+		} else if ("model".equals(name)) {
+			invalidateParent(evt.getSource());
+		}
+	}
+	/**
+	 * Indica si la etiqueta esta vacía
+	 * 
+	 * @param text etiqueta
+	 * @return <code>True</code> si es nula o vacía
+	 */
+	private static boolean isEmpty(Object text) {
+		return text == null || "".equals(text);
+	}
+	@Override
+	public void itemStateChanged(ItemEvent e) {
+		// los submenus cambian su selección al mostrarse
+		if (!(e.getSource() instanceof JMenu))
+			updateItem(e.getSource(), "selected");
+	}
+	@Override
+	public void componentShown(ComponentEvent e) {
+		invalidateParent(e.getSource());
+	}
+	@Override
+	public void componentHidden(ComponentEvent e) {
+		invalidateParent(e.getSource());
+	}
+	@Override
+	public void componentMoved(ComponentEvent e) {}
+	@Override
+	public void componentResized(ComponentEvent e) {}
+}
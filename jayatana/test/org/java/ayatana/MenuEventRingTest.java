@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import static org.junit.Assert.*;
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+/**
+ * Pruebas de la cola de eventos de menu cuando se llena
+ */
+public class MenuEventRingTest {
+	/**
+	 * Destino que registra los identificadores atendidos
+	 */
+	private static class Recorder implements MenuEventRing.Target {
+		private final List<Integer> ids = new ArrayList<Integer>();
+		
+		@Override
+		public void handleMenuEvent(int type, int id, long token) {
+			assertTrue(EventQueue.isDispatchThread());
+			ids.add(id);
+		}
+	}
+	
+	/**
+	 * Retiene el hilo de eventos de AWT hasta liberarlo
+	 */
+	private static CountDownLatch blockEventQueue() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		EventQueue.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		started.await();
+		return release;
+	}
+	/**
+	 * Espera a que el hilo de eventos de AWT atienda las tareas pendientes
+	 */
+	private static void flushEventQueue() throws Exception {
+		EventQueue.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+	}
+	
+	@Test
+	public void fullRingKeepsEveryEventInOrder() throws Exception {
+		MenuEventRing ring = new MenuEventRing(4);
+		Recorder recorder = new Recorder();
+		CountDownLatch release = blockEventQueue();
+		for (int id = 0; id < 20; id++)
+			assertEquals(id < 4, ring.offer(recorder, MenuEventRing.ACTIVATED, id, 0));
+		assertEquals(16, ring.getOverflowCount());
+		assertEquals(20, ring.getDepth());
+		release.countDown();
+		flushEventQueue();
+		assertEquals(20, recorder.ids.size());
+		for (int id = 0; id < 20; id++)
+			assertEquals(id, recorder.ids.get(id).intValue());
+		assertEquals(0, ring.getDepth());
+	}
+	@Test
+	public void ringIsReusedAfterOverflowDrains() throws Exception {
+		MenuEventRing ring = new MenuEventRing(2);
+		Recorder recorder = new Recorder();
+		CountDownLatch release = blockEventQueue();
+		for (int id = 0; id < 5; id++)
+			ring.offer(recorder, MenuEventRing.AFTER_SHOW, id, id);
+		release.countDown();
+		flushEventQueue();
+		assertTrue(ring.offer(recorder, MenuEventRing.AFTER_SHOW, 5, 5));
+		flushEventQueue();
+		assertEquals(3, ring.getOverflowCount());
+		assertEquals(6, recorder.ids.size());
+		for (int id = 0; id < 6; id++)
+			assertEquals(id, recorder.ids.get(id).intValue());
+	}
+}
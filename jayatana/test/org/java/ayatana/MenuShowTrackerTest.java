@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Pruebas del emparejamiento de selección y deselección de submenus
+ */
+public class MenuShowTrackerTest {
+	@Test
+	public void selectBeforeDeselect() {
+		MenuShowTracker shows = new MenuShowTracker();
+		long token = shows.open(1);
+		assertEquals(token, shows.close(1));
+		assertTrue(shows.select(1, token));
+		assertTrue(shows.deselect(1, token));
+	}
+	@Test
+	public void deselectBeforeSelectCancelsSelect() {
+		MenuShowTracker shows = new MenuShowTracker();
+		long token = shows.open(1);
+		// el cierre llega al hilo de eventos antes que la selección preparada
+		long closed = shows.close(1);
+		assertFalse(shows.deselect(1, closed));
+		assertFalse(shows.select(1, token));
+		// no queda nada pendiente de deseleccionar
+		assertFalse(shows.deselect(1, closed));
+	}
+	@Test
+	public void reopenDiscardsStaleSelect() {
+		MenuShowTracker shows = new MenuShowTracker();
+		long first = shows.open(1);
+		long second = shows.open(1);
+		assertFalse(shows.select(1, first));
+		assertTrue(shows.select(1, second));
+		assertTrue(shows.deselect(1, shows.close(1)));
+	}
+	@Test
+	public void reopenAfterCloseSelectsLatest() {
+		MenuShowTracker shows = new MenuShowTracker();
+		long first = shows.open(1);
+		long firstClosed = shows.close(1);
+		long second = shows.open(1);
+		long secondClosed = shows.close(1);
+		// la primera apertura ya se reemplazó, no se selecciona ni deselecciona
+		assertFalse(shows.select(1, first));
+		assertFalse(shows.deselect(1, firstClosed));
+		assertTrue(shows.select(1, second));
+		assertTrue(shows.deselect(1, secondClosed));
+	}
+	@Test
+	public void closeWithoutOpen() {
+		MenuShowTracker shows = new MenuShowTracker();
+		assertEquals(0, shows.close(1));
+		assertFalse(shows.deselect(1, 0));
+	}
+	@Test
+	public void menusAreIndependent() {
+		MenuShowTracker shows = new MenuShowTracker();
+		long first = shows.open(1);
+		long second = shows.open(2);
+		assertFalse(shows.deselect(2, shows.close(2)));
+		assertTrue(shows.select(1, first));
+		assertFalse(shows.select(2, second));
+		assertTrue(shows.deselect(1, shows.close(1)));
+	}
+}
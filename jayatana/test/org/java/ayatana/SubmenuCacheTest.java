@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2012 Jared González
+ * 
+ * Permission is hereby granted, free of charge, to any
+ * person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the
+ * Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice
+ * shall be included in all copies or substantial portions of
+ * the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY
+ * KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.java.ayatana;
+
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import org.junit.Test;
+
+/**
+ * Pruebas de la vigencia de submenus exportados
+ */
+public class SubmenuCacheTest {
+	private static final Set<JMenu> NONE = Collections.emptySet();
+	
+	private final SubmenuCache cache = new SubmenuCache(new SubmenuCache.ItemUpdater() {
+		@Override
+		public void updateItem(JMenuItem menuitem, String property) {
+		}
+	});
+	
+	private static Set<JMenu> menus(JMenu... menus) {
+		return new HashSet<JMenu>(Arrays.asList(menus));
+	}
+	
+	@Test
+	public void reexportKeepsRepublishedChildren() {
+		JMenu parent = new JMenu("parent");
+		JMenu kept = new JMenu("kept");
+		JMenu dropped = new JMenu("dropped");
+		parent.add(kept);
+		parent.add(dropped);
+		cache.exported(parent, menus(kept, dropped));
+		cache.exported(kept, NONE);
+		cache.exported(dropped, NONE);
+		// el reemplazo ya no publica uno de los submenus
+		cache.exported(parent, menus(kept));
+		assertTrue(cache.contains(parent));
+		assertTrue(cache.contains(kept));
+		assertFalse(cache.contains(dropped));
+	}
+	@Test
+	public void removedInvalidatesDescendants() {
+		JMenu parent = new JMenu("parent");
+		JMenu child = new JMenu("child");
+		JMenu grandchild = new JMenu("grandchild");
+		parent.add(child);
+		child.add(grandchild);
+		cache.exported(parent, menus(child));
+		cache.exported(child, menus(grandchild));
+		cache.exported(grandchild, NONE);
+		cache.removed(parent);
+		assertFalse(cache.contains(parent));
+		assertFalse(cache.contains(child));
+		assertFalse(cache.contains(grandchild));
+	}
+	@Test
+	public void structureChangeInvalidatesOnlyParent() {
+		JMenu parent = new JMenu("parent");
+		JMenu child = new JMenu("child");
+		parent.add(child);
+		cache.exported(parent, menus(child));
+		cache.exported(child, NONE);
+		parent.add(new JMenuItem("item"));
+		assertFalse(cache.contains(parent));
+		assertTrue(cache.contains(child));
+	}
+}